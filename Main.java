@@ -1,4 +1,36 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * HashAndAVLPlayground
@@ -8,151 +40,4641 @@ import java.util.*;
  * How it works
  * - You get 5 scrambled-word rounds.
  * - Exact guess of the original word: +10 points
- * - A different but valid word from our mini-dictionary: +5 points
+ * - A different valid word from our mini-dictionary using the same letters: +5 points
+ * - One edit (typo) away from an accepted word: +2 points
  * - Otherwise: 0 points
+ * - Type ? instead of a guess to reveal the next letter of the word.
  * - After playing, your score is inserted into an AVL tree and we show a top-5 leaderboard.
  *
  */
 public class Main {
 
+    // ======== Dictionary contract ========
+    // Common lookup API so the game can swap dictionary backends without touching the rules
+    interface WordDictionary {
+        // Full hash of key as this dictionary computes it
+        long hash(String key);
+        // Lookup with a hash from hash(key), so one guess can be hashed once and probed many times
+        boolean contains(String key, long hash);
+        default boolean contains(String key) { return contains(key, hash(key)); }
+        // Case-insensitive lookup of s[from, to) against the lower-case stored words. Backends
+        // fold and compare the slice in place, so a guess can be checked straight out of the
+        // input line without trim()/toLowerCase() copies (wrap a char[] once with CharBuffer.wrap).
+        default boolean contains(CharSequence s, int from, int to) { return contains(foldToString(s, from, to)); }
+        // hash() of the case-folded slice, i.e. the hash contains(s, from, to) probes with
+        default long hashFolded(CharSequence s, int from, int to) { return hash(foldToString(s, from, to)); }
+        // out[i] = contains(keys[i]); backends may batch the hashing and memory accesses
+        default void containsAll(String[] keys, boolean[] out) {
+            if (out.length < keys.length) throw new IllegalArgumentException("out is shorter than keys: " + out.length);
+            for (int i = 0; i < keys.length; i++) out[i] = contains(keys[i]);
+        }
+        void add(String key);
+        int size();
+    }
+
+    // ======== Hash strategies ========
+    interface HashStrategy {
+        long hash(CharSequence s, int from, int to);
+        default long hash(CharSequence s) { return hash(s, 0, s.length()); }
+        // Hash of the case-folded slice; equals hash(foldToString(s, from, to))
+        default long hashFolded(CharSequence s, int from, int to) { return hash(foldToString(s, from, to)); }
+        // out[i - from] = hash(keys[i]); strategies may hash several keys at once for throughput
+        default void hashAll(String[] keys, int from, int to, long[] out) {
+            for (int i = from; i < to; i++) out[i - from] = hash(keys[i]);
+        }
+    }
+
+    // Candidates to benchmark against a real word list; all hash UTF-16 code units directly.
+    // Each reads chars through charAt(s, i, fold) so the folded variant needs no copy.
+    enum StandardHashes implements HashStrategy {
+        DJB2 {
+            @Override long hash(CharSequence s, int from, int to, boolean fold) {
+                long h = 5381;
+                for (int i = from; i < to; i++) h = ((h << 5) + h) + charAt(s, i, fold); // h * 33 + c
+                return h;
+            }
+        },
+        FNV1A {
+            @Override long hash(CharSequence s, int from, int to, boolean fold) {
+                long h = 0xcbf29ce484222325L;
+                for (int i = from; i < to; i++) {
+                    h ^= charAt(s, i, fold);
+                    h *= 0x100000001b3L;
+                }
+                return h;
+            }
+        },
+        // Murmur3 x86_32, two chars per 32-bit block (same layout as Guava's hashUnencodedChars)
+        MURMUR3 {
+            @Override long hash(CharSequence s, int from, int to, boolean fold) {
+                int h = 0;
+                int i = from;
+                for (; i + 1 < to; i += 2) {
+                    int k = charAt(s, i, fold) | (charAt(s, i + 1, fold) << 16);
+                    h ^= mixK(k);
+                    h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+                }
+                if (i < to) h ^= mixK(charAt(s, i, fold));
+                h ^= (to - from) * 2;
+                h ^= h >>> 16; h *= 0x85ebca6b;
+                h ^= h >>> 13; h *= 0xc2b2ae35;
+                h ^= h >>> 16;
+                return h & 0xffffffffL;
+            }
+
+            private int mixK(int k) {
+                k *= 0xcc9e2d51;
+                k = Integer.rotateLeft(k, 15);
+                return k * 0x1b873593;
+            }
+        },
+        // xxHash64-style: four chars per 64-bit lane, xxh64 round and avalanche constants
+        XX64 {
+            @Override long hash(CharSequence s, int from, int to, boolean fold) { return xx64(s, from, to, 0, fold); }
+            @Override public void hashAll(String[] keys, int from, int to, long[] out) { xx64All(keys, from, to, 0, out); }
+        };
+
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+
+        abstract long hash(CharSequence s, int from, int to, boolean fold);
+
+        @Override public long hash(CharSequence s, int from, int to) { return hash(s, from, to, false); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return hash(s, from, to, true); }
+
+        static long xx64(CharSequence s, int from, int to, long seed) { return xx64(s, from, to, seed, false); }
+
+        static long xx64(CharSequence s, int from, int to, long seed, boolean fold) {
+            return xx64Rest(s, from, to, seed + P5 + (to - from) * 2L, fold);
+        }
+
+        // Four keys hashed in lockstep over their common whole blocks, then finished one by one.
+        // The lanes' multiply chains are independent, so they overlap in the pipeline instead of
+        // each block waiting on the previous one. out[i - from] = xx64(keys[i], seed).
+        static void xx64All(String[] keys, int from, int to, long seed, long[] out) {
+            int i = from;
+            for (; i + 3 < to; i += 4) {
+                String a = keys[i], b = keys[i + 1], c = keys[i + 2], d = keys[i + 3];
+                long ha = seed + P5 + a.length() * 2L, hb = seed + P5 + b.length() * 2L;
+                long hc = seed + P5 + c.length() * 2L, hd = seed + P5 + d.length() * 2L;
+                int common = Math.min(Math.min(a.length(), b.length()), Math.min(c.length(), d.length())) & ~3;
+                for (int p = 0; p < common; p += 4) {
+                    ha = xx64Round(ha, a, p, false);
+                    hb = xx64Round(hb, b, p, false);
+                    hc = xx64Round(hc, c, p, false);
+                    hd = xx64Round(hd, d, p, false);
+                }
+                out[i - from] = xx64Rest(a, common, a.length(), ha, false);
+                out[i + 1 - from] = xx64Rest(b, common, b.length(), hb, false);
+                out[i + 2 - from] = xx64Rest(c, common, c.length(), hc, false);
+                out[i + 3 - from] = xx64Rest(d, common, d.length(), hd, false);
+            }
+            for (; i < to; i++) out[i - from] = xx64(keys[i], 0, keys[i].length(), seed);
+        }
+
+        // One four-char block at s[i, i + 4)
+        private static long xx64Round(long h, CharSequence s, int i, boolean fold) {
+            long k = charAt(s, i, fold) | ((long)charAt(s, i + 1, fold) << 16)
+                   | ((long)charAt(s, i + 2, fold) << 32) | ((long)charAt(s, i + 3, fold) << 48);
+            k *= P2; k = Long.rotateLeft(k, 31); k *= P1;
+            h ^= k;
+            return Long.rotateLeft(h, 27) * P1 + P4;
+        }
+
+        // Remaining blocks and chars of s[i, to) on top of h, then the avalanche
+        private static long xx64Rest(CharSequence s, int i, int to, long h, boolean fold) {
+            for (; i + 3 < to; i += 4) h = xx64Round(h, s, i, fold);
+            for (; i < to; i++) {
+                h ^= charAt(s, i, fold) * P5;
+                h = Long.rotateLeft(h, 11) * P1;
+            }
+            h ^= h >>> 33; h *= P2;
+            h ^= h >>> 29; h *= P3;
+            h ^= h >>> 32;
+            return h;
+        }
+    }
+
+    // Keyed xxHash64-style hash. Guesses come from users, so with a secret per-process seed a
+    // client cannot precompute keys that all land in one bucket.
+    static final class SeededHash implements HashStrategy {
+        private static final SeededHash PER_PROCESS = new SeededHash(new SecureRandom().nextLong());
+
+        private final long seed;
+
+        SeededHash(long seed) { this.seed = seed; }
+
+        static SeededHash perProcess() { return PER_PROCESS; }
+
+        @Override public long hash(CharSequence s, int from, int to) { return StandardHashes.xx64(s, from, to, seed); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return StandardHashes.xx64(s, from, to, seed, true); }
+        @Override public void hashAll(String[] keys, int from, int to, long[] out) { StandardHashes.xx64All(keys, from, to, seed, out); }
+    }
+
+    // ======== Case folding for in-place lookups ========
+    // Per-char lower-casing (ASCII fast path). Stored words are lower case, so folding the
+    // probe char by char matches what toLowerCase() would produce for dictionary words.
+    static char fold(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        return Character.toLowerCase(c);
+    }
+
+    static char charAt(CharSequence s, int i, boolean fold) {
+        char c = s.charAt(i);
+        return fold ? fold(c) : c;
+    }
+
+    // key equals s[from, to), optionally folding s
+    static boolean regionEquals(String key, CharSequence s, int from, int to, boolean fold) {
+        if (key.length() != to - from) return false;
+        if (!fold && from == 0 && to == s.length() && s instanceof String) return key.equals(s);
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != charAt(s, from + i, fold)) return false;
+        }
+        return true;
+    }
+
+    // s[from, to) (optionally folded) compared with key, in String.compareTo order
+    static int regionCompare(CharSequence s, int from, int to, boolean fold, String key) {
+        int len = to - from;
+        int lim = Math.min(len, key.length());
+        for (int i = 0; i < lim; i++) {
+            char a = charAt(s, from + i, fold), b = key.charAt(i);
+            if (a != b) return a - b;
+        }
+        return len - key.length();
+    }
+
+    // Allocating fallback for backends without an in-place path
+    static String foldToString(CharSequence s, int from, int to) {
+        char[] out = new char[to - from];
+        for (int i = from; i < to; i++) out[i - from] = fold(s.charAt(i));
+        return new String(out);
+    }
+
+    // Fold a 64-bit hash into a table index; cap must be a power of two
+    static int indexFor(long h, int cap) {
+        int x = (int)(h ^ (h >>> 32));
+        x ^= x >>> 16;
+        return x & (cap - 1);
+    }
+
+    static int tableSizeFor(int n) {
+        int cap = 16;
+        while (cap < n && cap < (1 << 30)) cap <<= 1;
+        return cap;
+    }
+
+    // Murmur3 fmix64 finaliser: every input bit affects every output bit
+    static long mix64(long x) {
+        x ^= x >>> 33; x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33; x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    // ======== Chained hash table engine ========
+    // How a SimpleHashSet/SimpleHashMap hashes its keys. tieOrder() ranks distinct keys with equal
+    // hashes inside treeified buckets; without one, long chains simply stay chains.
+    interface KeyHasher<K> {
+        long hash(K key);
+        default Comparator<? super K> tieOrder() { return null; }
+
+        static KeyHasher<String> of(HashStrategy strategy) {
+            Objects.requireNonNull(strategy, "strategy");
+            return new KeyHasher<String>() {
+                @Override public long hash(String key) { return strategy.hash(key); }
+                @Override public Comparator<? super String> tieOrder() { return Comparator.naturalOrder(); }
+            };
+        }
+
+        // hashCode() spread over 64 bits; fine for keys a client cannot choose
+        static <K> KeyHasher<K> hashCodes() { return key -> mix64(key.hashCode()); }
+
+        static <K extends Comparable<? super K>> KeyHasher<K> comparable() {
+            return new KeyHasher<K>() {
+                @Override public long hash(K key) { return mix64(key.hashCode()); }
+                @Override public Comparator<? super K> tieOrder() { return Comparator.naturalOrder(); }
+            };
+        }
+    }
+
+    // Matches stored keys without materialising the probed key (e.g. a slice of an input line).
+    // compareTo must agree with the table's tieOrder so treeified buckets can be searched.
+    interface KeyProbe<K> {
+        boolean matches(K key);
+        int compareTo(K key);
+    }
+
+    // Chaining with cached hashes, incremental resize, treeified buckets, shrinking and
+    // bucket-range traversal. SimpleHashSet leaves the node values unused; SimpleHashMap fills them.
+    abstract static class ChainedTable<K, V> {
+        static class Node<K, V> {
+            K key;
+            V value;
+            long hash; // cached so chains compare hashes before equals and rehash never recomputes
+            Node<K, V> next;
+            Node(K k, V v, long h, Node<K, V> n) { key = k; value = v; hash = h; next = n; }
+        }
+
+        // Like java.util.HashMap: a chain that grows past TREEIFY_THRESHOLD is replaced by a
+        // balanced tree ordered by (hash, tieOrder), so even a fully colliding bucket is O(log n).
+        // A TreeBin is always the only entry in its bucket.
+        static final class TreeBin<K, V> extends Node<K, V> {
+            final AVLTree<Node<K, V>> tree;
+
+            TreeBin(Comparator<Node<K, V>> order) {
+                super(null, null, 0, null);
+                tree = new AVLTree<>(order);
+            }
+
+            // Either key (compared by tie) or probe identifies the target
+            Node<K, V> get(long h, K key, KeyProbe<? super K> probe, Comparator<? super K> tie) {
+                return tree.find(n -> {
+                    int c = Long.compare(h, n.hash);
+                    if (c != 0) return c;
+                    return probe != null ? probe.compareTo(n.key) : tie.compare(key, n.key);
+                });
+            }
+
+            // Back to a plain chain (null if empty)
+            Node<K, V> untreeify() {
+                List<Node<K, V>> chain = new ArrayList<>(1);
+                chain.add(null);
+                tree.forEach(n -> { n.next = chain.get(0); chain.set(0, n); });
+                return chain.get(0);
+            }
+        }
+
+        static final int TREEIFY_THRESHOLD = 8;
+        static final int UNTREEIFY_THRESHOLD = 6;
+        static final float DEFAULT_LOAD_FACTOR = 0.75f;
+        // How many old buckets are moved into the new table on each operation during a resize
+        private static final int MIGRATE_STEP = 4;
+        // Keys are counted per block of 64 buckets so spliterators can split with exact sizes
+        private static final int BLOCK_SHIFT = 6;
+
+        private Node<K, V>[] buckets;
+        private int capacity; // always a power of two so indexing is a mask, not a modulo
+        private int size;
+        private final float loadFactor;
+        private final KeyHasher<? super K> hasher;
+        private final Comparator<? super K> tieOrder;
+        private final Comparator<Node<K, V>> binOrder; // null: never treeify
+        private int threshold;
+        private final int minCapacity; // compaction never shrinks below the constructor's size
+        private int[] blockCounts;     // keys per 64-bucket block of buckets (not of oldBuckets)
+        private int modCount;          // bumped on structural changes, for fail-fast traversal
+
+        // While resizing, the previous table is drained into buckets a few chains at a time,
+        // so there is never one big stop-the-world rehash. Buckets below migrateIdx are done.
+        private Node<K, V>[] oldBuckets;
+        private int oldCapacity;
+        private int migrateIdx;
+
+        ChainedTable(int capacity, float loadFactor, KeyHasher<? super K> hasher) {
+            if (!(loadFactor > 0)) throw new IllegalArgumentException("loadFactor must be > 0: " + loadFactor);
+            this.loadFactor = loadFactor;
+            this.hasher = Objects.requireNonNull(hasher, "hasher");
+            Comparator<? super K> tie = hasher.tieOrder();
+            this.tieOrder = tie;
+            this.binOrder = tie == null ? null : (a, b) -> {
+                int c = Long.compare(a.hash, b.hash);
+                return c != 0 ? c : tie.compare(a.key, b.key);
+            };
+            this.capacity = tableSizeFor(capacity);
+            this.minCapacity = this.capacity;
+            this.buckets = newTable(this.capacity);
+            this.blockCounts = new int[blockCount(this.capacity)];
+            this.threshold = (int)(this.capacity * loadFactor);
+            this.size = 0;
+        }
+
+        // Initial capacity that holds expectedSize keys without ever triggering a resize
+        static int capacityFor(int expectedSize) {
+            return (int)Math.ceil(expectedSize / (double)DEFAULT_LOAD_FACTOR) + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K, V> Node<K, V>[] newTable(int n) { return (Node<K, V>[])new Node<?, ?>[n]; }
+
+        public long hash(K key) { return hasher.hash(key); }
+
+        // Node for key (or, if probe is set, the node probe matches). Checks the not-yet-migrated
+        // part of the old table too while a resize is in flight.
+        final Node<K, V> getNode(long h, K key, KeyProbe<? super K> probe) {
+            migrateSome();
+            if (oldBuckets != null) {
+                int oldIdx = indexFor(h, oldCapacity);
+                if (oldIdx >= migrateIdx) {
+                    Node<K, V> n = chainFind(oldBuckets[oldIdx], h, key, probe);
+                    if (n != null) return n;
+                }
+            }
+            return chainFind(buckets[indexFor(h, capacity)], h, key, probe);
+        }
+
+        private Node<K, V> chainFind(Node<K, V> cur, long h, K key, KeyProbe<? super K> probe) {
+            if (cur instanceof TreeBin) return ((TreeBin<K, V>)cur).get(h, key, probe, tieOrder);
+            for (; cur != null; cur = cur.next) {
+                if (cur.hash == h && (probe != null ? probe.matches(cur.key) : key.equals(cur.key))) return cur;
+            }
+            return null;
+        }
+
+        // Batched lookup of keys[from, to) with hashes[i - from] into out[i]. Every bucket head of
+        // the batch, and its first node's hash, is loaded before any chain is walked, so the
+        // batch's cache misses overlap instead of being paid one lookup at a time.
+        final void containsBatch(K[] keys, int from, int to, long[] hashes, boolean[] out) {
+            migrateSome();
+            if (oldBuckets != null) { // two tables to probe; not worth batching for one resize
+                for (int i = from; i < to; i++) out[i] = getNode(hashes[i - from], keys[i], null) != null;
+                return;
+            }
+            Node<K, V>[] tab = buckets;
+            int n = to - from;
+            Node<K, V>[] heads = newTable(n);
+            long[] headHashes = new long[n];
+            for (int j = 0; j < n; j++) {
+                Node<K, V> head = tab[indexFor(hashes[j], capacity)];
+                heads[j] = head;
+                if (head != null) headHashes[j] = head.hash;
+            }
+            for (int j = 0; j < n; j++) {
+                Node<K, V> head = heads[j];
+                long h = hashes[j];
+                K key = keys[from + j];
+                if (head == null) out[from + j] = false;
+                else if (!(head instanceof TreeBin) && headHashes[j] == h && key.equals(head.key)) out[from + j] = true;
+                else out[from + j] = chainFind(head, h, key, null) != null;
+            }
+        }
+
+        // Adds a node for a key the caller has just looked up and found absent
+        final Node<K, V> insertNode(K key, long h, V value) {
+            Node<K, V> n = new Node<>(key, value, h, null);
+            link(indexFor(h, capacity), n);
+            size++;
+            modCount++;
+            if (size > threshold) startResize(capacity << 1);
+            return n;
+        }
+
+        final Node<K, V> removeNode(K key, long h) {
+            migrateSome();
+            Node<K, V> removed = null;
+            if (oldBuckets != null) {
+                int oldIdx = indexFor(h, oldCapacity);
+                if (oldIdx >= migrateIdx) removed = unlink(oldBuckets, oldIdx, key, h);
+            }
+            if (removed == null) removed = unlink(buckets, indexFor(h, capacity), key, h);
+            if (removed == null) return null;
+            size--;
+            modCount++;
+            maybeShrink();
+            return removed;
+        }
+
+        // One sweep over both tables; chains are unlinked in place, no tombstones
+        final boolean removeNodesIf(Predicate<? super Node<K, V>> filter) {
+            int before = size;
+            if (oldBuckets != null) {
+                for (int i = migrateIdx; i < oldCapacity; i++) sweep(oldBuckets, i, filter);
+            }
+            for (int i = 0; i < capacity; i++) sweep(buckets, i, filter);
+            if (size == before) return false;
+            modCount++;
+            maybeShrink();
+            return true;
+        }
+
+        private void sweep(Node<K, V>[] tab, int idx, Predicate<? super Node<K, V>> filter) {
+            Node<K, V> head = tab[idx];
+            if (head instanceof TreeBin) {
+                TreeBin<K, V> bin = (TreeBin<K, V>)head;
+                List<Node<K, V>> doomed = new ArrayList<>();
+                bin.tree.forEach(n -> { if (filter.test(n)) doomed.add(n); });
+                for (Node<K, V> n : doomed) bin.tree.remove(n);
+                size -= doomed.size();
+                recount(tab, idx, -doomed.size());
+                if (bin.tree.size() <= UNTREEIFY_THRESHOLD) tab[idx] = bin.untreeify();
+                return;
+            }
+            Node<K, V> prev = null;
+            for (Node<K, V> cur = head; cur != null; cur = cur.next) {
+                if (filter.test(cur)) {
+                    if (prev == null) tab[idx] = cur.next;
+                    else prev.next = cur.next;
+                    size--;
+                    recount(tab, idx, -1);
+                } else {
+                    prev = cur;
+                }
+            }
+        }
+
+        private Node<K, V> unlink(Node<K, V>[] tab, int idx, K key, long h) {
+            Node<K, V> head = tab[idx];
+            if (head instanceof TreeBin) {
+                TreeBin<K, V> bin = (TreeBin<K, V>)head;
+                Node<K, V> n = bin.get(h, key, null, tieOrder);
+                if (n == null) return null;
+                bin.tree.remove(n);
+                if (bin.tree.size() <= UNTREEIFY_THRESHOLD) tab[idx] = bin.untreeify();
+                recount(tab, idx, -1);
+                return n;
+            }
+            for (Node<K, V> prev = null, cur = head; cur != null; prev = cur, cur = cur.next) {
+                if (cur.hash == h && cur.key.equals(key)) {
+                    if (prev == null) tab[idx] = cur.next;
+                    else prev.next = cur.next;
+                    recount(tab, idx, -1);
+                    return cur;
+                }
+            }
+            return null;
+        }
+
+        private static int blockCount(int capacity) { return Math.max(1, capacity >>> BLOCK_SHIFT); }
+
+        private void recount(Node<K, V>[] tab, int idx, int delta) {
+            if (tab == buckets) blockCounts[idx >>> BLOCK_SHIFT] += delta;
+        }
+
+        // Amortised compaction: once the table is mostly empty, start an incremental migration
+        // into a smaller one, so long-running processes do not keep an oversized bucket array
+        private void maybeShrink() {
+            if (oldBuckets != null || capacity <= minCapacity || size >= threshold / 4) return;
+            startResize(Math.max(minCapacity, tableSizeFor((int)(size / loadFactor) * 2)));
+        }
+
+        private void startResize(int newCapacity) {
+            // Finish any resize still in flight before starting the next one
+            if (oldBuckets != null) migrate(oldCapacity);
+            oldBuckets = buckets;
+            oldCapacity = capacity;
+            migrateIdx = 0;
+            capacity = newCapacity;
+            buckets = newTable(capacity);
+            blockCounts = new int[blockCount(capacity)];
+            threshold = (int)(capacity * loadFactor);
+            modCount++;
+        }
+
+        // Move the next few old chains into the new table, relinking the existing nodes
+        private void migrateSome() {
+            if (oldBuckets == null) return;
+            migrate(Math.min(oldCapacity, migrateIdx + MIGRATE_STEP));
+            // Removals made while the old table drained were never checked against the new one
+            if (oldBuckets == null) maybeShrink();
+        }
+
+        // Migrate old chains up to (not including) end
+        private void migrate(int end) {
+            for (; migrateIdx < end; migrateIdx++) {
+                Node<K, V> cur = oldBuckets[migrateIdx];
+                oldBuckets[migrateIdx] = null;
+                if (cur instanceof TreeBin) {
+                    ((TreeBin<K, V>)cur).tree.forEach(n -> link(indexFor(n.hash, capacity), n));
+                    continue;
+                }
+                while (cur != null) {
+                    Node<K, V> next = cur.next;
+                    link(indexFor(cur.hash, capacity), cur);
+                    cur = next;
+                }
+            }
+            if (migrateIdx >= oldCapacity) oldBuckets = null;
+        }
+
+        // Put a node known to be absent into buckets[idx], treeifying the chain once it gets too long
+        private void link(int idx, Node<K, V> n) {
+            Node<K, V>[] tab = buckets;
+            blockCounts[idx >>> BLOCK_SHIFT]++;
+            Node<K, V> head = tab[idx];
+            if (head instanceof TreeBin) {
+                n.next = null;
+                ((TreeBin<K, V>)head).tree.insert(n);
+                return;
+            }
+            n.next = head;
+            tab[idx] = n;
+            if (binOrder == null) return;
+            int len = 0;
+            for (Node<K, V> cur = n; cur != null; cur = cur.next) len++;
+            if (len > TREEIFY_THRESHOLD) {
+                TreeBin<K, V> bin = new TreeBin<>(binOrder);
+                for (Node<K, V> cur = n; cur != null; ) {
+                    Node<K, V> next = cur.next;
+                    cur.next = null;
+                    bin.tree.insert(cur);
+                    cur = next;
+                }
+                tab[idx] = bin;
+            }
+        }
+
+        // ---- Traversal ----
+        // Traversal finishes any in-flight resize first, so lookups made while iterating never
+        // move nodes under the cursor. Adds and removes fail fast.
+        final <R> Spliterator<R> nodeSpliterator(Function<? super Node<K, V>, ? extends R> view, int characteristics) {
+            while (oldBuckets != null) migrateSome();
+            return new BucketSpliterator<>(0, capacity, size, modCount, view,
+                characteristics | Spliterator.SIZED | Spliterator.SUBSIZED);
+        }
+
+        // Walks buckets [lo, hi) in place, without copying nodes. Splits land on 64-bucket block
+        // boundaries, where blockCounts gives each half's exact size (SIZED and SUBSIZED).
+        final class BucketSpliterator<R> implements Spliterator<R> {
+            private int lo;
+            private final int hi;
+            private long remaining;
+            private final int expectedModCount;
+            private final Function<? super Node<K, V>, ? extends R> view;
+            private final int characteristics;
+            private Node<K, V> next;             // next chain node in bucket lo - 1
+            private Iterator<Node<K, V>> treeIt; // set while walking a TreeBin
+
+            BucketSpliterator(int lo, int hi, long remaining, int expectedModCount,
+                              Function<? super Node<K, V>, ? extends R> view, int characteristics) {
+                this.lo = lo;
+                this.hi = hi;
+                this.remaining = remaining;
+                this.expectedModCount = expectedModCount;
+                this.view = view;
+                this.characteristics = characteristics;
+            }
+
+            @Override public Spliterator<R> trySplit() {
+                if (next != null || treeIt != null) return null; // mid-bucket; keep going alone
+                int mid = ((lo + hi) >>> 1) & ~((1 << BLOCK_SHIFT) - 1);
+                if (mid <= lo || mid >= hi) return null;
+                // [mid, hi) is whole blocks even after tryAdvance has moved lo off a boundary, so
+                // count the right half and leave the left half whatever is still unconsumed
+                long rightSize = 0;
+                for (int b = mid >>> BLOCK_SHIFT; b < hi >>> BLOCK_SHIFT; b++) rightSize += blockCounts[b];
+                long leftSize = remaining - rightSize;
+                BucketSpliterator<R> left = new BucketSpliterator<>(lo, mid, leftSize, expectedModCount, view, characteristics);
+                lo = mid;
+                remaining = rightSize;
+                return left;
+            }
+
+            @Override public boolean tryAdvance(Consumer<? super R> action) {
+                for (;;) {
+                    checkForComodification();
+                    if (treeIt != null) {
+                        if (treeIt.hasNext()) return emit(treeIt.next(), action);
+                        treeIt = null;
+                    }
+                    if (next != null) {
+                        Node<K, V> n = next;
+                        next = n.next;
+                        return emit(n, action);
+                    }
+                    if (lo >= hi) return false;
+                    Node<K, V> head = buckets[lo++];
+                    if (head instanceof TreeBin) {
+                        List<Node<K, V>> nodes = new ArrayList<>();
+                        ((TreeBin<K, V>)head).tree.forEach(nodes::add);
+                        treeIt = nodes.iterator();
+                    } else {
+                        next = head;
+                    }
+                }
+            }
+
+            private boolean emit(Node<K, V> n, Consumer<? super R> action) {
+                remaining--;
+                action.accept(view.apply(n));
+                return true;
+            }
+
+            @Override public void forEachRemaining(Consumer<? super R> action) {
+                while (next != null || treeIt != null) tryAdvance(action);
+                Consumer<Node<K, V>> visit = n -> action.accept(view.apply(n));
+                for (; lo < hi; lo++) forEachNode(buckets[lo], visit);
+                remaining = 0;
+                checkForComodification();
+            }
+
+            private void checkForComodification() {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            }
+
+            @Override public long estimateSize() { return remaining; }
+            @Override public int characteristics() { return characteristics; }
+        }
+
+        public int size() { return size; }
+        public int capacity() { return capacity; }
+        public boolean isResizing() { return oldBuckets != null; }
+
+        // Every node, without finishing an in-flight resize
+        final void forEachNode(Consumer<? super Node<K, V>> action) {
+            if (oldBuckets != null) {
+                for (Node<K, V> head : oldBuckets) forEachNode(head, action); // migrated slots are already null
+            }
+            for (Node<K, V> head : buckets) forEachNode(head, action);
+        }
+
+        private static <K, V> void forEachNode(Node<K, V> head, Consumer<? super Node<K, V>> action) {
+            if (head instanceof TreeBin) {
+                ((TreeBin<K, V>)head).tree.forEach(action);
+                return;
+            }
+            for (Node<K, V> cur = head; cur != null; cur = cur.next) action.accept(cur);
+        }
+
+        // Chain-length distribution, for comparing hash strategies on a real key set
+        public ChainStats stats() {
+            while (oldBuckets != null) migrateSome(); // measure the settled table
+            int max = 0, used = 0;
+            int[] counts = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                int len = 0;
+                if (buckets[i] instanceof TreeBin) len = ((TreeBin<K, V>)buckets[i]).tree.size();
+                else for (Node<K, V> cur = buckets[i]; cur != null; cur = cur.next) len++;
+                counts[i] = len;
+                if (len > 0) used++;
+                max = Math.max(max, len);
+            }
+            int[] histogram = new int[max + 1];
+            for (int len : counts) histogram[len]++;
+            return new ChainStats(capacity, used, size, max, histogram);
+        }
+
+        static class ChainStats {
+            final int buckets;
+            final int usedBuckets;
+            final int maxChain;
+            final double meanChain;   // average over non-empty buckets, i.e. expected probes for a hit
+            final int[] histogram;    // histogram[n] = number of buckets holding exactly n keys
+
+            ChainStats(int buckets, int usedBuckets, int keys, int maxChain, int[] histogram) {
+                this.buckets = buckets;
+                this.usedBuckets = usedBuckets;
+                this.maxChain = maxChain;
+                this.meanChain = usedBuckets == 0 ? 0 : keys / (double)usedBuckets;
+                this.histogram = histogram;
+            }
+
+            @Override public String toString() {
+                return String.format("buckets=%d used=%d max=%d mean=%.2f histogram=%s",
+                    buckets, usedBuckets, maxChain, meanChain, Arrays.toString(histogram));
+            }
+        }
+    }
+
     // ======== Simple HashSet (chaining) ========
-    static class SimpleHashSet {
-        static class Node {
-            String key;
-            Node next;
-            Node(String k, Node n) { key = k; next = n; }
+    static class SimpleHashSet<K> extends ChainedTable<K, Object> implements Iterable<K> {
+        public SimpleHashSet(int capacity, KeyHasher<? super K> hasher) { this(capacity, DEFAULT_LOAD_FACTOR, hasher); }
+
+        public SimpleHashSet(int capacity, float loadFactor, KeyHasher<? super K> hasher) {
+            super(capacity, loadFactor, hasher);
+        }
+
+        // Pre-size the table so expectedSize keys fit without ever triggering a resize
+        public static <K> SimpleHashSet<K> withExpectedSize(int expectedSize, KeyHasher<? super K> hasher) {
+            return new SimpleHashSet<>(capacityFor(expectedSize), DEFAULT_LOAD_FACTOR, hasher);
+        }
+
+        public boolean contains(K key) { return contains(key, hash(key)); }
+
+        // Lookup with a hash from hash(key)
+        public boolean contains(K key, long h) { return getNode(h, key, null) != null; }
+
+        public void add(K key) { addHashed(key, hash(key)); }
+
+        // add() with a hash already computed by this set's hasher
+        void addHashed(K key, long h) {
+            if (getNode(h, key, null) == null) insertNode(key, h, null);
+        }
+
+        public boolean remove(K key) { return removeNode(key, hash(key)) != null; }
+
+        public boolean removeAll(Collection<? extends K> keys) {
+            if (keys.size() >= size()) return removeIf(keys::contains);
+            boolean changed = false;
+            for (K k : keys) {
+                if (remove(k)) changed = true;
+            }
+            return changed;
+        }
+
+        public boolean retainAll(Collection<?> keep) { return removeIf(k -> !keep.contains(k)); }
+
+        public boolean removeIf(Predicate<? super K> filter) { return removeNodesIf(n -> filter.test(n.key)); }
+
+        @Override public Iterator<K> iterator() { return Spliterators.iterator(spliterator()); }
+
+        @Override public Spliterator<K> spliterator() {
+            return nodeSpliterator(n -> n.key, Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+
+        public Stream<K> stream() { return StreamSupport.stream(spliterator(), false); }
+
+        // Every key, without finishing an in-flight resize
+        void forEachKey(Consumer<? super K> action) { forEachNode(n -> action.accept(n.key)); }
+    }
+
+    // The game's dictionary: a String SimpleHashSet hashed by a HashStrategy, with allocation-free
+    // slice lookups, bulk loading from a word file and freezing
+    static final class WordSet extends SimpleHashSet<String> implements WordDictionary {
+        private final HashStrategy strategy;
+        private final SliceProbe probe = new SliceProbe(); // reused so slice lookups allocate nothing
+
+        public WordSet(int capacity) { this(capacity, DEFAULT_LOAD_FACTOR); }
+
+        public WordSet(int capacity, float loadFactor) { this(capacity, loadFactor, StandardHashes.DJB2); }
+
+        public WordSet(int capacity, float loadFactor, HashStrategy strategy) {
+            super(capacity, loadFactor, KeyHasher.of(strategy));
+            this.strategy = strategy;
+        }
+
+        public static WordSet withExpectedSize(int expectedSize) {
+            return withExpectedSize(expectedSize, StandardHashes.DJB2);
+        }
+
+        public static WordSet withExpectedSize(int expectedSize, HashStrategy strategy) {
+            return new WordSet(capacityFor(expectedSize), DEFAULT_LOAD_FACTOR, strategy);
+        }
+
+        // Seeded hashing plus treeified buckets, for dictionaries probed with untrusted input
+        public static WordSet hardened(int expectedSize) {
+            return withExpectedSize(expectedSize, SeededHash.perProcess());
+        }
+
+        @Override public long hashFolded(CharSequence s, int from, int to) { return strategy.hashFolded(s, from, to); }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            return contains(s, from, to, hashFolded(s, from, to));
+        }
+
+        // Slice lookup for callers that already hold hashFolded(s, from, to)
+        boolean contains(CharSequence s, int from, int to, long foldedHash) {
+            return getNode(foldedHash, null, probe.of(s, from, to)) != null;
+        }
+
+        // Keys per batch: enough independent lookups in flight to hide memory latency, while the
+        // batch's hashes and heads stay in L1
+        private static final int BATCH = 64;
+
+        // Bulk validation: keys are hashed a batch at a time through the strategy's hashAll (the
+        // xxHash-based ones run four keys in lockstep), then looked up with heads loaded up front
+        @Override public void containsAll(String[] keys, boolean[] out) {
+            if (out.length < keys.length) throw new IllegalArgumentException("out is shorter than keys: " + out.length);
+            long[] hashes = new long[BATCH];
+            for (int from = 0; from < keys.length; from += BATCH) {
+                int to = Math.min(keys.length, from + BATCH);
+                strategy.hashAll(keys, from, to, hashes);
+                containsBatch(keys, from, to, hashes, out);
+            }
+        }
+
+        public HashStrategy strategy() { return strategy; }
+
+        // Case-folded s[from, to), compared in place against stored keys
+        static final class SliceProbe implements KeyProbe<String> {
+            private CharSequence s;
+            private int from, to;
+
+            SliceProbe of(CharSequence s, int from, int to) {
+                this.s = s;
+                this.from = from;
+                this.to = to;
+                return this;
+            }
+
+            @Override public boolean matches(String key) { return regionEquals(key, s, from, to, true); }
+            @Override public int compareTo(String key) { return regionCompare(s, from, to, true, key); }
+        }
+
+        // Immutable minimal-perfect-hash copy of the current contents
+        public FrozenDictionary freeze() {
+            List<String> keys = new ArrayList<>(size());
+            forEachKey(keys::add);
+            return FrozenDictionary.build(keys);
+        }
+
+        // ---- Bulk loading ----
+        // Average bytes per line assumed when pre-sizing from the file length (short words + '\n')
+        private static final int BYTES_PER_WORD_GUESS = 8;
+        private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+        public static WordSet load(Path file) throws IOException {
+            return load(file, SeededHash.perProcess(), true);
+        }
+
+        // Newline-delimited UTF-8 word list -> set of trimmed, lower-cased, distinct words.
+        // The file is memory-mapped in newline-aligned chunks; with parallel set, chunks are
+        // parsed and hashed on the common ForkJoinPool and then merged in file order.
+        public static WordSet load(Path file, HashStrategy strategy, boolean parallel) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                WordSet set = withExpectedSize((int)Math.min(1 << 28, size / BYTES_PER_WORD_GUESS + 1), strategy);
+                int chunks = parallel
+                    ? (int)Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, size / MIN_CHUNK_BYTES))
+                    : 1;
+                // Chunks also keep each mapping under the 2 GB MappedByteBuffer limit
+                chunks = (int)Math.max(chunks, (size >> 30) + 1);
+                long[] bounds = new long[chunks + 1];
+                bounds[chunks] = size;
+                for (int i = 1; i < chunks; i++) bounds[i] = nextLineStart(ch, Math.max(bounds[i - 1], size * i / chunks), size);
+
+                List<Future<ParsedChunk>> parts = new ArrayList<>(chunks);
+                for (int i = 0; i < chunks; i++) {
+                    ByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+                    if (chunks == 1) {
+                        set.merge(ParsedChunk.parse(region, strategy));
+                        return set;
+                    }
+                    parts.add(ForkJoinPool.commonPool().submit(() -> ParsedChunk.parse(region, strategy)));
+                }
+                for (Future<ParsedChunk> part : parts) set.merge(join(part));
+                return set;
+            }
+        }
+
+        private static ParsedChunk join(Future<ParsedChunk> part) throws IOException {
+            try {
+                return part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while loading words", e);
+            } catch (ExecutionException e) {
+                throw new IOException("failed to parse word list", e.getCause());
+            }
+        }
+
+        // First offset after the next '\n' at or after pos (size if there is none)
+        private static long nextLineStart(FileChannel ch, long pos, long size) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            while (pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') return pos + i + 1;
+                }
+                pos += n;
+            }
+            return size;
+        }
+
+        private void merge(ParsedChunk part) {
+            for (int i = 0; i < part.count; i++) addHashed(part.words[i], part.hashes[i]);
+        }
+
+        // Words of one file region with their hashes, so the merge step does no hashing
+        static final class ParsedChunk {
+            String[] words = new String[1024];
+            long[] hashes = new long[1024];
+            int count;
+
+            static ParsedChunk parse(ByteBuffer region, HashStrategy strategy) {
+                ParsedChunk out = new ParsedChunk();
+                char[] line = new char[64];
+                int limit = region.limit();
+                for (int start = 0; start < limit; ) {
+                    int end = start;
+                    while (end < limit && region.get(end) != '\n') end++;
+                    int from = start, to = end;
+                    while (from < to && (region.get(from) & 0xff) <= ' ') from++;
+                    while (to > from && (region.get(to - 1) & 0xff) <= ' ') to--;
+                    if (from < to) {
+                        // ASCII is lower-cased while copying into the reused line buffer;
+                        // anything else goes through the UTF-8 decoder
+                        if (line.length < to - from) line = new char[Math.max(to - from, line.length * 2)];
+                        int len = 0;
+                        boolean ascii = true;
+                        for (int i = from; i < to && ascii; i++) {
+                            byte b = region.get(i);
+                            if (b < 0) ascii = false;
+                            else line[len++] = fold((char)b);
+                        }
+                        String word;
+                        if (ascii) {
+                            word = new String(line, 0, len);
+                        } else {
+                            byte[] raw = new byte[to - from];
+                            region.get(from, raw);
+                            String decoded = new String(raw, StandardCharsets.UTF_8);
+                            word = foldToString(decoded, 0, decoded.length());
+                        }
+                        out.append(word, strategy.hash(word));
+                    }
+                    start = end + 1;
+                }
+                return out;
+            }
+
+            private void append(String word, long h) {
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                words[count] = word;
+                hashes[count++] = h;
+            }
+        }
+    }
+
+    // ======== Simple HashMap (chaining) ========
+    // Same engine as SimpleHashSet; the value rides in the node, so a mapping costs no more memory
+    // than a set entry
+    static class SimpleHashMap<K, V> extends ChainedTable<K, V> {
+        public SimpleHashMap(int capacity, KeyHasher<? super K> hasher) { this(capacity, DEFAULT_LOAD_FACTOR, hasher); }
+
+        public SimpleHashMap(int capacity, float loadFactor, KeyHasher<? super K> hasher) {
+            super(capacity, loadFactor, hasher);
+        }
+
+        public static <K, V> SimpleHashMap<K, V> withExpectedSize(int expectedSize, KeyHasher<? super K> hasher) {
+            return new SimpleHashMap<>(capacityFor(expectedSize), DEFAULT_LOAD_FACTOR, hasher);
+        }
+
+        public V get(K key) { return getOrDefault(key, null); }
+
+        public V getOrDefault(K key, V defaultValue) {
+            Node<K, V> n = getNode(hash(key), key, null);
+            return n == null ? defaultValue : n.value;
+        }
+
+        public boolean containsKey(K key) { return getNode(hash(key), key, null) != null; }
+
+        // Previous value, or null if key was absent
+        public V put(K key, V value) {
+            long h = hash(key);
+            Node<K, V> n = getNode(h, key, null);
+            if (n == null) {
+                insertNode(key, h, value);
+                return null;
+            }
+            V old = n.value;
+            n.value = value;
+            return old;
+        }
+
+        public V computeIfAbsent(K key, Function<? super K, ? extends V> fn) {
+            long h = hash(key);
+            Node<K, V> n = getNode(h, key, null);
+            if (n != null) return n.value;
+            V value = fn.apply(key);
+            if (value != null) insertNode(key, h, value);
+            return value;
+        }
+
+        // Removed value, or null if key was absent
+        public V remove(K key) {
+            Node<K, V> n = removeNode(key, hash(key));
+            return n == null ? null : n.value;
+        }
+
+        public boolean removeIf(BiPredicate<? super K, ? super V> filter) {
+            return removeNodesIf(n -> filter.test(n.key, n.value));
+        }
+
+        public void forEach(BiConsumer<? super K, ? super V> action) { forEachNode(n -> action.accept(n.key, n.value)); }
+
+        public Stream<K> keys() {
+            return StreamSupport.stream(nodeSpliterator(n -> n.key, Spliterator.DISTINCT | Spliterator.NONNULL), false);
+        }
+    }
+
+    // ======== Primitive-keyed sets and maps ========
+    // Open addressing over a plain long[]: no nodes and no boxing, just one slot per key (plus a
+    // parallel Object[] for map values). Keys are scrambled with mix64 and probed linearly. 0 marks
+    // an empty slot, so the key 0 lives in a flag beside the table. Removal shifts the rest of
+    // the cluster back into the gap, so there are no tombstones and churn never degrades probes.
+    // LongHashSet, IntHashSet and LongObjectMap share this table; the sets have no values array.
+    static class LongTable {
+        // Linear probing wants short clusters more than it wants a dense table
+        private static final float LOAD_FACTOR = 0.5f;
+        private static final int MAX_CAPACITY = 1 << 30;
+        // Returned by value()/delete() for a missing key, since null is a legal map value
+        static final Object ABSENT = new Object();
+
+        private long[] keys;
+        private Object[] values; // parallel to keys; null for sets
+        private final boolean withValues;
+        private boolean hasZero;
+        private Object zeroValue;
+        private int mask;
+        private int size;       // includes the zero key
+        private int threshold;
+
+        LongTable(int expectedSize, boolean withValues) {
+            if (expectedSize < 0) throw new IllegalArgumentException("expectedSize must be >= 0: " + expectedSize);
+            this.withValues = withValues;
+            allocate(tableSizeFor((int)Math.min(MAX_CAPACITY, (long)(expectedSize / LOAD_FACTOR) + 1)));
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            if (withValues) values = new Object[capacity];
+            mask = capacity - 1;
+            threshold = (int)(capacity * LOAD_FACTOR);
+        }
+
+        // Slot holding key (key != 0), or ~slot of the empty slot that ends its probe sequence
+        private int slotOf(long key) {
+            for (int i = (int)mix64(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return i;
+                if (k == 0) return ~i;
+            }
+        }
+
+        public boolean containsKey(long key) { return key == 0 ? hasZero : slotOf(key) >= 0; }
+
+        // Value for key, or ABSENT
+        final Object value(long key) {
+            if (key == 0) return hasZero ? zeroValue : ABSENT;
+            int slot = slotOf(key);
+            return slot >= 0 ? values[slot] : ABSENT;
+        }
+
+        // Returns the previous value (null for sets or when absent)
+        final Object insert(long key, Object value) {
+            if (key == 0) {
+                Object old = zeroValue;
+                zeroValue = value;
+                if (!hasZero) {
+                    hasZero = true;
+                    size++;
+                }
+                return old;
+            }
+            int slot = slotOf(key);
+            if (slot >= 0) {
+                if (!withValues) return null;
+                Object old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = ~slot;
+            keys[slot] = key;
+            if (withValues) values[slot] = value;
+            if (++size > threshold) grow();
+            return null;
+        }
+
+        // Previous value (null for sets), or ABSENT if key was not there
+        final Object delete(long key) {
+            if (key == 0) {
+                if (!hasZero) return ABSENT;
+                Object old = zeroValue;
+                hasZero = false;
+                zeroValue = null;
+                size--;
+                return old;
+            }
+            int slot = slotOf(key);
+            if (slot < 0) return ABSENT;
+            Object old = withValues ? values[slot] : null;
+            shiftBack(slot);
+            size--;
+            return old;
+        }
+
+        // Backward-shift deletion: each later entry of the cluster moves into the gap unless the
+        // gap lies before its home slot (then it would become unreachable)
+        private void shiftBack(int gap) {
+            for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                int home = (int)mix64(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    if (withValues) values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = 0;
+            if (withValues) values[gap] = null;
+        }
+
+        private void grow() {
+            if (keys.length == MAX_CAPACITY) throw new IllegalStateException("table is full: " + size + " keys");
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            allocate(keys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                long k = oldKeys[i];
+                if (k == 0) continue;
+                int slot = ~slotOf(k);
+                keys[slot] = k;
+                if (withValues) values[slot] = oldValues[i];
+            }
+        }
+
+        final void forEachSlot(LongTableVisitor visitor) {
+            if (hasZero) visitor.visit(0, zeroValue);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) visitor.visit(keys[i], withValues ? values[i] : null);
+            }
+        }
+
+        interface LongTableVisitor { void visit(long key, Object value); }
+
+        public int size() { return size; }
+        public int capacity() { return keys.length; }
+    }
+
+    static final class LongHashSet extends LongTable {
+        public LongHashSet(int expectedSize) { super(expectedSize, false); }
+
+        public boolean contains(long key) { return containsKey(key); }
+
+        // true if key was not already present
+        public boolean add(long key) {
+            int before = size();
+            insert(key, null);
+            return size() > before;
+        }
+
+        public boolean remove(long key) { return delete(key) != ABSENT; }
+
+        public void forEach(LongConsumer action) { forEachSlot((k, v) -> action.accept(k)); }
+
+        public long[] toArray() {
+            long[] out = new long[size()];
+            int[] n = new int[1];
+            forEachSlot((k, v) -> out[n[0]++] = k);
+            return out;
+        }
+    }
+
+    static final class LongObjectMap<V> extends LongTable {
+        public LongObjectMap(int expectedSize) { super(expectedSize, true); }
+
+        public V get(long key) { return getOrDefault(key, null); }
+
+        @SuppressWarnings("unchecked")
+        public V getOrDefault(long key, V defaultValue) {
+            Object v = value(key);
+            return v == ABSENT ? defaultValue : (V)v;
+        }
+
+        // Previous value, or null if key was absent
+        @SuppressWarnings("unchecked")
+        public V put(long key, V value) { return (V)insert(key, value); }
+
+        public V computeIfAbsent(long key, LongFunction<? extends V> fn) {
+            V v = get(key);
+            if (v != null) return v;
+            v = fn.apply(key);
+            if (v != null) insert(key, v);
+            return v;
+        }
+
+        // Removed value, or null if key was absent
+        @SuppressWarnings("unchecked")
+        public V remove(long key) {
+            Object v = delete(key);
+            return v == ABSENT ? null : (V)v;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEach(EntryConsumer<? super V> action) { forEachSlot((k, v) -> action.accept(k, (V)v)); }
+
+        interface EntryConsumer<V> { void accept(long key, V value); }
+    }
+
+    // LongHashSet for int keys: the same table, with keys widened to long. That costs 8 bytes a
+    // slot, twice an int[] table, in exchange for a single probing/deletion implementation; fine
+    // for its one caller, FuzzyIndex.lookup's per-query seen set of a few dozen ids. A large,
+    // long-lived int set would want its own int[] slots.
+    static final class IntHashSet extends LongTable {
+        public IntHashSet(int expectedSize) { super(expectedSize, false); }
+
+        public boolean contains(int key) { return containsKey(key); }
+
+        // true if key was not already present
+        public boolean add(int key) {
+            int before = size();
+            insert(key, null);
+            return size() > before;
+        }
+
+        public boolean remove(int key) { return delete(key) != ABSENT; }
+
+        public void forEach(IntConsumer action) { forEachSlot((k, v) -> action.accept((int)k)); }
+    }
+
+    // ======== Open-addressing HashSet (Robin Hood linear probing) ========
+    // No per-entry objects: a slot is just a stored hash plus a key reference in two parallel
+    // arrays, so a probe walks neighbouring ints instead of chasing Node pointers.
+    static class OpenHashSet implements WordDictionary {
+        private static final float LOAD_FACTOR = 0.7f;
+
+        private final HashStrategy strategy;
+        private int[] hashes;   // 0 marks an empty slot; stored hashes are forced non-zero
+        private String[] keys;
+        private int mask;
+        private int size;
+        private int threshold;
+
+        public OpenHashSet(int expectedSize) { this(expectedSize, StandardHashes.DJB2); }
+
+        public OpenHashSet(int expectedSize, HashStrategy strategy) {
+            this.strategy = Objects.requireNonNull(strategy, "strategy");
+            int cap = 16;
+            while (cap * LOAD_FACTOR < expectedSize) cap <<= 1;
+            allocate(cap);
+        }
+
+        private void allocate(int cap) {
+            hashes = new int[cap];
+            keys = new String[cap];
+            mask = cap - 1;
+            threshold = (int)(cap * LOAD_FACTOR);
+        }
+
+        @Override public long hash(String s) { return strategy.hash(s); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return strategy.hashFolded(s, from, to); }
+
+        // Fold the full hash into the non-zero int kept in the hashes array
+        private static int slotHash(long h) {
+            int x = (int)(h ^ (h >>> 32));
+            x ^= x >>> 16; // spread high bits, the table is masked not mod-ed
+            return x == 0 ? 1 : x;
+        }
+
+        // How far the entry with hash h sitting at slot is from its home slot
+        private int probeDistance(int h, int slot) { return (slot - (h & mask)) & mask; }
+
+        @Override public boolean contains(String key, long fullHash) { return find(key, 0, key.length(), false, fullHash); }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            return find(s, from, to, true, hashFolded(s, from, to));
+        }
+
+        private boolean find(CharSequence s, int from, int to, boolean fold, long fullHash) {
+            int h = slotHash(fullHash);
+            int slot = h & mask;
+            for (int dist = 0; ; dist++, slot = (slot + 1) & mask) {
+                int sh = hashes[slot];
+                if (sh == 0) return false;
+                // Robin Hood invariant: once we pass a richer entry, our key cannot be further on
+                if (probeDistance(sh, slot) < dist) return false;
+                if (sh == h && regionEquals(keys[slot], s, from, to, fold)) return true;
+            }
+        }
+
+        @Override public void add(String key) {
+            long fullHash = hash(key);
+            if (contains(key, fullHash)) return;
+            if (size >= threshold) rehash(hashes.length << 1);
+            insert(slotHash(fullHash), key);
+            size++;
+        }
+
+        // Robin Hood insert: steal the slot from any entry closer to home than we are
+        private void insert(int h, String key) {
+            int slot = h & mask;
+            for (int dist = 0; ; dist++, slot = (slot + 1) & mask) {
+                int sh = hashes[slot];
+                if (sh == 0) {
+                    hashes[slot] = h;
+                    keys[slot] = key;
+                    return;
+                }
+                int existing = probeDistance(sh, slot);
+                if (existing < dist) {
+                    String sk = keys[slot];
+                    hashes[slot] = h;
+                    keys[slot] = key;
+                    h = sh;
+                    key = sk;
+                    dist = existing;
+                }
+            }
+        }
+
+        private void rehash(int newCap) {
+            int[] oldHashes = hashes;
+            String[] oldKeys = keys;
+            allocate(newCap);
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) insert(oldHashes[i], oldKeys[i]);
+            }
+        }
+
+        @Override public int size() { return size; }
+        public int capacity() { return hashes.length; }
+    }
+
+    // ======== Concurrent HashSet (CAS-published immutable chains) ========
+    // Shareable across game-server threads while words are hot-added. Chains are immutable, and
+    // add publishes a new head with one CAS, so contains never locks or retries (wait-free).
+    // Growing is cooperative, as in ConcurrentHashMap: threads claim strides of old buckets,
+    // copy each chain into the next table and leave a Forward marker behind; lookups that hit a
+    // marker simply continue in the next table.
+    static final class ConcurrentWordSet implements WordDictionary {
+        static class Node {
+            final String key;
+            final long hash;
+            final Node next;
+            Node(String k, long h, Node n) { key = k; hash = h; next = n; }
+        }
+
+        static final class Forward extends Node {
+            final Table to;
+            Forward(Table to) { super(null, 0, null); this.to = to; }
+        }
+
+        static final class Table {
+            final AtomicReferenceArray<Node> buckets;
+            final int threshold;
+            Table(int cap) {
+                buckets = new AtomicReferenceArray<>(cap);
+                threshold = cap - (cap >>> 2); // 0.75
+            }
+        }
+
+        // One resize in flight: strides of from are claimed through nextBucket
+        static final class Transfer {
+            final Table from, to;
+            final Forward forward;
+            final AtomicInteger nextBucket = new AtomicInteger();
+            final AtomicInteger moved = new AtomicInteger();
+            Transfer(Table from, Table to) { this.from = from; this.to = to; this.forward = new Forward(to); }
+        }
+
+        private static final int STRIDE = 64;
+
+        private final AtomicReference<Table> table;
+        private final AtomicReference<Transfer> transfer = new AtomicReference<>();
+        private final LongAdder size = new LongAdder();
+        private final HashStrategy strategy;
+
+        public ConcurrentWordSet(int expectedSize) { this(expectedSize, SeededHash.perProcess()); }
+
+        public ConcurrentWordSet(int expectedSize, HashStrategy strategy) {
+            this.strategy = Objects.requireNonNull(strategy, "strategy");
+            this.table = new AtomicReference<>(new Table(tableSizeFor(expectedSize + (expectedSize >>> 1) + 1)));
+        }
+
+        @Override public long hash(String key) { return strategy.hash(key); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return strategy.hashFolded(s, from, to); }
+
+        @Override public boolean contains(String key, long h) { return find(key, 0, key.length(), false, h); }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            return find(s, from, to, true, hashFolded(s, from, to));
+        }
+
+        private boolean find(CharSequence s, int from, int to, boolean fold, long h) {
+            Table t = table.get();
+            for (;;) {
+                Node cur = t.buckets.get(indexFor(h, t.buckets.length()));
+                if (cur instanceof Forward) { t = ((Forward)cur).to; continue; }
+                for (; cur != null; cur = cur.next) {
+                    if (cur.hash == h && regionEquals(cur.key, s, from, to, fold)) return true;
+                }
+                return false;
+            }
+        }
+
+        @Override public void add(String key) {
+            long h = hash(key);
+            Table t = table.get();
+            for (;;) {
+                int idx = indexFor(h, t.buckets.length());
+                Node head = t.buckets.get(idx);
+                if (head instanceof Forward) {
+                    Transfer tr = transfer.get();
+                    if (tr != null) help(tr);
+                    t = ((Forward)head).to;
+                    continue;
+                }
+                for (Node cur = head; cur != null; cur = cur.next) {
+                    if (cur.hash == h && cur.key.equals(key)) return; // already there
+                }
+                if (t.buckets.compareAndSet(idx, head, new Node(key, h, head))) {
+                    size.increment();
+                    if (size.sum() > t.threshold) grow(t);
+                    return;
+                }
+                // lost the race for this bucket: rescan, the winner may have added the same key
+            }
+        }
+
+        private void grow(Table t) {
+            Transfer tr = transfer.get();
+            if (tr == null) {
+                if (table.get() != t) return; // someone already grew it
+                Transfer fresh = new Transfer(t, new Table(t.buckets.length() << 1));
+                if (!transfer.compareAndSet(null, fresh)) {
+                    tr = transfer.get();
+                    if (tr != null) help(tr);
+                    return;
+                }
+                if (table.get() != t) { // t was replaced between our checks; nothing to move
+                    transfer.compareAndSet(fresh, null);
+                    return;
+                }
+                tr = fresh;
+            }
+            help(tr);
+        }
+
+        // Claim strides of the old table until none are left; the thread that moves the last
+        // bucket publishes the new table
+        private void help(Transfer tr) {
+            int n = tr.from.buckets.length();
+            for (;;) {
+                int start = tr.nextBucket.getAndAdd(STRIDE);
+                if (start >= n) return;
+                int end = Math.min(n, start + STRIDE);
+                for (int i = start; i < end; i++) moveBucket(tr, i);
+                if (tr.moved.addAndGet(end - start) == n) {
+                    table.compareAndSet(tr.from, tr.to);
+                    transfer.compareAndSet(tr, null);
+                }
+            }
+        }
+
+        // Old bucket i splits into new buckets i and i + n. Nobody writes those until the Forward
+        // is published, so they can be set plainly; if an add beats our CAS, copy again.
+        private static void moveBucket(Transfer tr, int i) {
+            AtomicReferenceArray<Node> from = tr.from.buckets, to = tr.to.buckets;
+            int n = from.length();
+            for (;;) {
+                Node head = from.get(i);
+                if (head instanceof Forward) return;
+                Node lo = null, hi = null;
+                for (Node cur = head; cur != null; cur = cur.next) {
+                    if (indexFor(cur.hash, n << 1) == i) lo = new Node(cur.key, cur.hash, lo);
+                    else hi = new Node(cur.key, cur.hash, hi);
+                }
+                to.set(i, lo);
+                to.set(i + n, hi);
+                if (from.compareAndSet(i, head, tr.forward)) return;
+            }
+        }
+
+        @Override public int size() { return size.intValue(); }
+        public int capacity() { return table.get().buckets.length(); }
+    }
+
+    // ======== Frozen dictionary (minimal perfect hash) ========
+    // Read-only word set built once with CHD-style hash-and-displace: keys are grouped into
+    // small buckets, and each bucket gets a displacement that drops all its keys into distinct
+    // free slots of a table with exactly n slots. contains is then one hash, one displacement
+    // read and one key compare against a single packed char pool - no chains, no Node objects.
+    static final class FrozenDictionary implements WordDictionary {
+        private static final int KEYS_PER_BUCKET = 4;
+        private static final int MAX_SEED_ATTEMPTS = 32;
+
+        private final long seed;
+        private final int n;
+        private final int[] displacement; // per bucket: d0 in the high 16 bits, d1 in the low 16
+        private final int[] offsets;      // slot i holds pool[offsets[i] .. offsets[i + 1])
+        private final char[] pool;
+
+        private FrozenDictionary(long seed, int n, int[] displacement, int[] offsets, char[] pool) {
+            this.seed = seed;
+            this.n = n;
+            this.displacement = displacement;
+            this.offsets = offsets;
+            this.pool = pool;
+        }
+
+        // keys must be distinct
+        static FrozenDictionary build(List<String> keys) {
+            Random rng = new Random(0x5eedL);
+            for (int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+                FrozenDictionary d = tryBuild(keys, rng.nextLong());
+                if (d != null) return d;
+            }
+            throw new IllegalStateException("no perfect hash found for " + keys.size() + " keys");
+        }
+
+        private static FrozenDictionary tryBuild(List<String> keys, long seed) {
+            int n = keys.size();
+            int nb = Math.max(1, (n + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+            long[] hashes = new long[n];
+            int[] bucketStart = new int[nb + 1];
+            for (int i = 0; i < n; i++) {
+                String k = keys.get(i);
+                hashes[i] = StandardHashes.xx64(k, 0, k.length(), seed);
+                bucketStart[bucketOf(hashes[i], nb) + 1]++;
+            }
+            int maxBucket = 0;
+            for (int b = 0; b < nb; b++) {
+                maxBucket = Math.max(maxBucket, bucketStart[b + 1]);
+                bucketStart[b + 1] += bucketStart[b];
+            }
+            int[] members = new int[n];
+            int[] fill = Arrays.copyOf(bucketStart, nb);
+            for (int i = 0; i < n; i++) members[fill[bucketOf(hashes[i], nb)]++] = i;
+
+            // Place the biggest buckets first while the table is still mostly empty
+            int[] bySize = new int[nb];
+            int[] sizeStart = new int[maxBucket + 2];
+            for (int b = 0; b < nb; b++) sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+            for (int s = 0; s <= maxBucket; s++) sizeStart[s + 1] += sizeStart[s];
+            for (int b = 0; b < nb; b++) bySize[sizeStart[maxBucket - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+
+            boolean[] taken = new boolean[n];
+            int[] slotOf = new int[n];
+            int[] displacement = new int[nb];
+            int[] tried = new int[maxBucket];
+            int span = Math.min(n, 1 << 16); // d1 takes each value below span before d0 moves on
+            long maxTries = Math.min((long)span << 16, (long)n * 16);
+            for (int b : bySize) {
+                int from = bucketStart[b], to = bucketStart[b + 1];
+                if (from == to) continue;
+                boolean placed = false;
+                int d0 = 0, d1 = 0;
+                for (long d = 0; d < maxTries && !placed; d++) {
+                    d0 = (int)(d / span);
+                    d1 = (int)(d - (long)d0 * span);
+                    int m = 0;
+                    for (int j = from; j < to; j++, m++) {
+                        int p = position(hashes[members[j]], d0, d1, n);
+                        if (taken[p] || indexOf(tried, m, p) >= 0) break;
+                        tried[m] = p;
+                    }
+                    if (m == to - from) {
+                        for (int j = from; j < to; j++) {
+                            taken[tried[j - from]] = true;
+                            slotOf[members[j]] = tried[j - from];
+                        }
+                        displacement[b] = d0 << 16 | d1;
+                        placed = true;
+                    }
+                }
+                if (!placed) return null; // two keys of this bucket can never be separated; reseed
+            }
+
+            int[] lengthAt = new int[n];
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                lengthAt[slotOf[i]] = keys.get(i).length();
+                total += keys.get(i).length();
+            }
+            int[] offsets = new int[n + 1];
+            for (int s = 0; s < n; s++) offsets[s + 1] = offsets[s] + lengthAt[s];
+            char[] pool = new char[total];
+            for (int i = 0; i < n; i++) {
+                String k = keys.get(i);
+                k.getChars(0, k.length(), pool, offsets[slotOf[i]]);
+            }
+            return new FrozenDictionary(seed, n, displacement, offsets, pool);
+        }
+
+        private static int indexOf(int[] a, int len, int v) {
+            for (int i = 0; i < len; i++) if (a[i] == v) return i;
+            return -1;
+        }
+
+        // Upper 32 bits choose the bucket, lower 32 bits and a remix of h choose the slot
+        private static int bucketOf(long h, int nb) { return (int)(((h >>> 32) * nb) >>> 32); }
+
+        // (f + d0 * g + d1 * golden) in 32-bit arithmetic, mapped onto [0, n) by multiply-shift
+        // rather than %: d0 moves each key of a bucket by its own step g, d1 shifts them all
+        private static int position(long h, int d0, int d1, int n) {
+            int f = (int)h;
+            int g = (int)((h * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+            int x = f + d0 * g + d1 * 0x9E3779B9;
+            return (int)(((x & 0xffffffffL) * n) >>> 32);
+        }
+
+        @Override public long hash(String key) { return StandardHashes.xx64(key, 0, key.length(), seed); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return StandardHashes.xx64(s, from, to, seed, true); }
+
+        @Override public boolean contains(String key, long h) { return find(key, 0, key.length(), false, h); }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            return find(s, from, to, true, hashFolded(s, from, to));
+        }
+
+        private boolean find(CharSequence s, int from, int to, boolean fold, long h) {
+            if (n == 0) return false;
+            int d = displacement[bucketOf(h, displacement.length)];
+            int slot = position(h, d >>> 16, d & 0xffff, n);
+            int at = offsets[slot], len = offsets[slot + 1] - at;
+            if (len != to - from) return false;
+            for (int i = 0; i < len; i++) {
+                if (pool[at + i] != charAt(s, from + i, fold)) return false;
+            }
+            return true;
+        }
+
+        @Override public void add(String key) {
+            throw new UnsupportedOperationException("FrozenDictionary is read-only");
+        }
+
+        @Override public int size() { return n; }
+
+        // Heap taken by the backing arrays (16-byte array headers)
+        public long bytesUsed() {
+            return (16 + 4L * displacement.length) + (16 + 4L * offsets.length) + (16 + 2L * pool.length);
+        }
+    }
+
+    // ======== Word automaton (DAFSA) ========
+    // Read-only dictionary as a minimal acyclic automaton: words share both prefixes and suffixes
+    // ("playing"/"saying" share the "ing" states), and a lookup is one transition per char with
+    // no hashing. Because states are shared by prefix, "every word starting with pla" is a walk
+    // to the state for "pla" plus a DFS of what lies below it, and per-state word counts answer
+    // "how many" in O(prefix length). Built with Daciuk et al.'s incremental algorithm over
+    // sorted input, then flattened into CSR arrays with one char and one int per transition.
+    static final class WordAutomaton implements WordDictionary {
+        private final int[] edgeStart;     // state s has transitions edgeStart[s] .. edgeStart[s + 1]
+        private final char[] labels;       // sorted within each state
+        private final int[] targets;
+        private final boolean[] accepting;
+        private final int[] wordsBelow;    // words accepted from each state, including itself
+
+        private WordAutomaton(int[] edgeStart, char[] labels, int[] targets, boolean[] accepting, int[] wordsBelow) {
+            this.edgeStart = edgeStart;
+            this.labels = labels;
+            this.targets = targets;
+            this.accepting = accepting;
+            this.wordsBelow = wordsBelow;
+        }
+
+        // Construction-time state; equivalent states are merged through the register
+        private static final class State {
+            char[] labels = new char[2];
+            State[] targets = new State[2];
+            int degree;
+            boolean accepting;
+            int registered = -1; // register number, once registered
+            int id = -1;         // flat index, assigned when flattening
+
+            void append(char c, State to) {
+                if (degree == labels.length) {
+                    labels = Arrays.copyOf(labels, degree * 2);
+                    targets = Arrays.copyOf(targets, degree * 2);
+                }
+                labels[degree] = c;
+                targets[degree++] = to;
+            }
+
+            // Identifies the right language once every target is registered: two such states are
+            // equivalent iff they agree on accepting and on each (label, target) pair
+            String signature() {
+                StringBuilder sb = new StringBuilder(1 + degree * 3).append(accepting ? '1' : '0');
+                for (int i = 0; i < degree; i++) {
+                    int t = targets[i].registered;
+                    sb.append(labels[i]).append((char)(t >>> 16)).append((char)t);
+                }
+                return sb.toString();
+            }
+        }
+
+        // Words need not be sorted or distinct
+        static WordAutomaton build(Iterable<String> words) {
+            List<String> sorted = new ArrayList<>();
+            for (String w : words) sorted.add(w);
+            Collections.sort(sorted);
+
+            State root = new State();
+            Map<String, State> register = new HashMap<>();
+            List<State> path = new ArrayList<>(); // path.get(i) is the state after the word's first i chars
+            path.add(root);
+            String prev = null;
+            for (String w : sorted) {
+                if (w.equals(prev)) continue;
+                int common = 0;
+                if (prev != null) {
+                    int lim = Math.min(prev.length(), w.length());
+                    while (common < lim && prev.charAt(common) == w.charAt(common)) common++;
+                }
+                // The previous word's tail below the shared prefix is final now; merge it
+                minimize(path, common, register);
+                for (int i = common; i < w.length(); i++) {
+                    State next = new State();
+                    path.get(i).append(w.charAt(i), next);
+                    path.add(next);
+                }
+                path.get(w.length()).accepting = true;
+                prev = w;
+            }
+            minimize(path, 0, register);
+            return flatten(root);
+        }
+
+        // Replace each state of path below depth `keep` by an equivalent registered one, deepest first
+        private static void minimize(List<State> path, int keep, Map<String, State> register) {
+            for (int i = path.size() - 1; i > keep; i--) {
+                State child = path.remove(i);
+                State parent = path.get(i - 1);
+                String sig = child.signature();
+                State existing = register.get(sig);
+                if (existing != null) {
+                    parent.targets[parent.degree - 1] = existing; // child is always the newest edge
+                } else {
+                    child.registered = register.size();
+                    register.put(sig, child);
+                }
+            }
+        }
+
+        private static WordAutomaton flatten(State root) {
+            // Number states in DFS preorder so the root is 0
+            List<State> order = new ArrayList<>();
+            Deque<State> stack = new ArrayDeque<>();
+            root.id = 0;
+            order.add(root);
+            stack.push(root);
+            int edges = 0;
+            while (!stack.isEmpty()) {
+                State s = stack.pop();
+                edges += s.degree;
+                for (int i = s.degree - 1; i >= 0; i--) {
+                    State t = s.targets[i];
+                    if (t.id >= 0) continue;
+                    t.id = order.size();
+                    order.add(t);
+                    stack.push(t);
+                }
+            }
+            int n = order.size();
+            int[] edgeStart = new int[n + 1];
+            char[] labels = new char[edges];
+            int[] targets = new int[edges];
+            boolean[] accepting = new boolean[n];
+            for (int id = 0, e = 0; id < n; id++) {
+                State s = order.get(id);
+                accepting[id] = s.accepting;
+                edgeStart[id] = e;
+                for (int i = 0; i < s.degree; i++, e++) {
+                    labels[e] = s.labels[i];
+                    targets[e] = s.targets[i].id;
+                }
+                edgeStart[id + 1] = e;
+            }
+            // Word counts need every child's count first: iterative post-order DFS
+            int[] wordsBelow = new int[n];
+            boolean[] done = new boolean[n];
+            Deque<int[]> frames = new ArrayDeque<>(); // {state, next edge}
+            frames.push(new int[] {0, edgeStart[0]});
+            while (!frames.isEmpty()) {
+                int[] f = frames.peek();
+                int s = f[0];
+                if (f[1] < edgeStart[s + 1]) {
+                    int t = targets[f[1]++];
+                    if (!done[t]) frames.push(new int[] {t, edgeStart[t]});
+                    continue;
+                }
+                frames.pop();
+                int count = accepting[s] ? 1 : 0;
+                for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) count += wordsBelow[targets[e]];
+                wordsBelow[s] = count;
+                done[s] = true;
+            }
+            return new WordAutomaton(edgeStart, labels, targets, accepting, wordsBelow);
+        }
+
+        // Target of s on c, or -1
+        private int step(int s, char c) {
+            int lo = edgeStart[s], hi = edgeStart[s + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char l = labels[mid];
+                if (l < c) lo = mid + 1;
+                else if (l > c) hi = mid - 1;
+                else return targets[mid];
+            }
+            return -1;
+        }
+
+        // State reached by s[from, to), or -1
+        private int walk(CharSequence s, int from, int to, boolean fold) {
+            int state = 0;
+            for (int i = from; i < to && state >= 0; i++) state = step(state, charAt(s, i, fold));
+            return state;
+        }
+
+        // No hashing: lookups walk the automaton, so the hash is just a placeholder
+        @Override public long hash(String key) { return 0; }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return 0; }
+
+        @Override public boolean contains(String key, long h) {
+            int state = walk(key, 0, key.length(), false);
+            return state >= 0 && accepting[state];
+        }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            int state = walk(s, from, to, true);
+            return state >= 0 && accepting[state];
+        }
+
+        @Override public void add(String key) {
+            throw new UnsupportedOperationException("WordAutomaton is read-only");
+        }
+
+        @Override public int size() { return wordsBelow[0]; }
+
+        // Number of words starting with prefix (case-folded), in O(prefix length)
+        public int countWithPrefix(CharSequence prefix) {
+            int state = walk(prefix, 0, prefix.length(), true);
+            return state < 0 ? 0 : wordsBelow[state];
+        }
+
+        // Words starting with prefix (case-folded) in sorted order; stops after limit words
+        public List<String> withPrefix(CharSequence prefix, int limit) {
+            if (limit < 0) throw new IllegalArgumentException("limit must be >= 0: " + limit);
+            List<String> out = new ArrayList<>(Math.min(limit, 16));
+            if (limit == 0) return out;
+            forEachWithPrefix(prefix, w -> {
+                out.add(w);
+                return out.size() < limit;
+            });
+            return out;
+        }
+
+        // Visits words starting with prefix in sorted order until action returns false
+        public void forEachWithPrefix(CharSequence prefix, Predicate<? super String> action) {
+            int state = walk(prefix, 0, prefix.length(), true);
+            if (state < 0) return;
+            StringBuilder word = new StringBuilder(prefix.length() + 16);
+            for (int i = 0; i < prefix.length(); i++) word.append(fold(prefix.charAt(i)));
+            enumerate(state, word, action);
+        }
+
+        // Depth is bounded by the longest word; returns false once action asks to stop
+        private boolean enumerate(int state, StringBuilder word, Predicate<? super String> action) {
+            if (accepting[state] && !action.test(word.toString())) return false;
+            int len = word.length();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                word.append(labels[e]);
+                boolean more = enumerate(targets[e], word, action);
+                word.setLength(len);
+                if (!more) return false;
+            }
+            return true;
+        }
+
+        public int states() { return accepting.length; }
+        public int transitions() { return labels.length; }
+
+        // Heap taken by the backing arrays (16-byte array headers)
+        public long bytesUsed() {
+            int n = accepting.length;
+            return (16 + 4L * (n + 1)) + (16 + 2L * labels.length) + (16 + 4L * targets.length)
+                + (16 + n) + (16 + 4L * n);
+        }
+    }
+
+    // ======== Memory-mapped dictionary file ========
+    // On-disk word set that is queried straight from a mapped buffer, so opening it costs one
+    // mmap and no per-word objects. Layout (big-endian):
+    //   header   magic, version, seed (long), keyCount, bucketCount, fingerprint (long),
+    //            pool bytes, 4 reserved bytes
+    //   buckets  bucketCount + 1 ints: entries of bucket b are [buckets[b], buckets[b + 1])
+    //   entries  keyCount x (int folded hash, int pool offset), grouped by bucket
+    //   pool     per key: unsigned short byte length + UTF-8 bytes
+    static final class MappedDictionary implements WordDictionary {
+        private static final int MAGIC = 0x57444943; // "WDIC"
+        private static final int VERSION = 2;
+        private static final int HEADER_BYTES = 40;
+
+        private final ByteBuffer buf;
+        private final long seed;
+        private final int keyCount;
+        private final int bucketCount;
+        private final int entriesAt;
+        private final long fingerprint;
+
+        // Checks the header and bucket table against the file, so a truncated or foreign file
+        // fails here rather than in contains()
+        private MappedDictionary(ByteBuffer buf) {
+            if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC)
+                throw new IllegalArgumentException("not a dictionary file");
+            if (buf.getInt(4) != VERSION)
+                throw new IllegalArgumentException("unsupported dictionary version " + buf.getInt(4));
+            this.buf = buf;
+            this.seed = buf.getLong(8);
+            this.keyCount = buf.getInt(16);
+            this.bucketCount = buf.getInt(20);
+            this.fingerprint = buf.getLong(24);
+            int poolBytes = buf.getInt(32);
+            if (keyCount < 0 || poolBytes < 0 || bucketCount < 1 || Integer.bitCount(bucketCount) != 1
+                    || HEADER_BYTES + 4L * (bucketCount + 1) + 8L * keyCount + poolBytes != buf.capacity())
+                throw new IllegalArgumentException("dictionary file is " + buf.capacity() + " bytes, but its header says "
+                    + keyCount + " keys in " + bucketCount + " buckets and " + poolBytes + " pool bytes");
+            this.entriesAt = HEADER_BYTES + 4 * (bucketCount + 1);
+            for (int b = 0, prev = 0; b <= bucketCount; b++) {
+                int start = buf.getInt(HEADER_BYTES + 4 * b);
+                if (start < prev || start > keyCount || (b == 0 && start != 0) || (b == bucketCount && start != keyCount))
+                    throw new IllegalArgumentException("corrupt dictionary bucket table at bucket " + b);
+                prev = start;
+            }
+        }
+
+        public static MappedDictionary open(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                return new MappedDictionary(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+
+        // Opens file if it holds exactly keys, otherwise (missing, unreadable, or written from
+        // another word list) rewrites it from keys first. keys must be distinct
+        public static MappedDictionary openFor(List<String> keys, Path file) throws IOException {
+            if (Files.exists(file)) {
+                try {
+                    MappedDictionary d = open(file);
+                    if (d.keyCount == keys.size() && d.fingerprint == fingerprint(keys)) return d;
+                } catch (IllegalArgumentException e) {
+                    // not a current dictionary file: rewrite it below
+                }
+            }
+            write(keys, file);
+            return open(file);
+        }
+
+        // Order-independent digest of a key set: a sum of per-key hashes under a fixed seed
+        static long fingerprint(Collection<String> keys) {
+            long fp = 0;
+            for (String k : keys) fp += StandardHashes.xx64(k, 0, k.length(), 0x5744494346505254L);
+            return fp;
+        }
+
+        public static void write(SimpleHashSet<String> set, Path file) throws IOException {
+            List<String> keys = new ArrayList<>(set.size());
+            set.forEachKey(keys::add);
+            write(keys, file);
+        }
+
+        // keys must be distinct
+        public static void write(List<String> keys, Path file) throws IOException {
+            int n = keys.size();
+            int buckets = tableSizeFor(n);
+            long seed = new SecureRandom().nextLong();
+            byte[][] utf8 = new byte[n][];
+            long[] hashes = new long[n];
+            int[] bucketStart = new int[buckets + 1];
+            long poolBytes = 0;
+            for (int i = 0; i < n; i++) {
+                String k = keys.get(i);
+                utf8[i] = k.getBytes(StandardCharsets.UTF_8);
+                if (utf8[i].length > 0xffff) throw new IllegalArgumentException("key too long: " + k.length() + " chars");
+                hashes[i] = StandardHashes.xx64(k, 0, k.length(), seed);
+                bucketStart[indexFor(hashes[i], buckets) + 1]++;
+                poolBytes += 2 + utf8[i].length;
+            }
+            for (int b = 0; b < buckets; b++) bucketStart[b + 1] += bucketStart[b];
+
+            long entriesAt = HEADER_BYTES + 4L * (buckets + 1);
+            long poolAt = entriesAt + 8L * n;
+            long total = poolAt + poolBytes;
+            if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("dictionary too large to map: " + total + " bytes");
+
+            Files.deleteIfExists(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, total);
+                out.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, seed).putInt(16, n).putInt(20, buckets)
+                    .putLong(24, fingerprint(keys)).putInt(32, (int)poolBytes);
+                for (int b = 0; b <= buckets; b++) out.putInt(HEADER_BYTES + 4 * b, bucketStart[b]);
+                int[] fill = Arrays.copyOf(bucketStart, buckets);
+                int pool = (int)poolAt;
+                for (int i = 0; i < n; i++) {
+                    int e = (int)entriesAt + 8 * fill[indexFor(hashes[i], buckets)]++;
+                    out.putInt(e, foldHash(hashes[i])).putInt(e + 4, pool);
+                    out.putShort(pool, (short)utf8[i].length);
+                    out.put(pool + 2, utf8[i]);
+                    pool += 2 + utf8[i].length;
+                }
+                out.force();
+            }
+        }
+
+        private static int foldHash(long h) { return (int)(h ^ (h >>> 32)); }
+
+        @Override public long hash(String key) { return StandardHashes.xx64(key, 0, key.length(), seed); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return StandardHashes.xx64(s, from, to, seed, true); }
+
+        @Override public boolean contains(String key, long h) { return find(key, 0, key.length(), false, h); }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            return find(s, from, to, true, hashFolded(s, from, to));
+        }
+
+        private boolean find(CharSequence s, int from, int to, boolean fold, long h) {
+            int b = HEADER_BYTES + 4 * indexFor(h, bucketCount);
+            int first = buf.getInt(b), last = buf.getInt(b + 4);
+            int folded = foldHash(h);
+            for (int e = entriesAt + 8 * first, end = entriesAt + 8 * last; e < end; e += 8) {
+                if (buf.getInt(e) == folded && keyEquals(buf.getInt(e + 4), s, from, to, fold)) return true;
+            }
+            return false;
+        }
+
+        // Decode the stored UTF-8 in place and compare it with the UTF-16 slice s[from, to)
+        private boolean keyEquals(int at, CharSequence s, int from, int to, boolean fold) {
+            int len = buf.getShort(at) & 0xffff;
+            if (len < to - from) return false; // UTF-8 never uses fewer bytes than UTF-16 chars
+            int i = from;
+            for (int p = at + 2, end = p + len; p < end; ) {
+                int c = buf.get(p++) & 0xff;
+                if (c >= 0x80) {
+                    if (c < 0xE0) {
+                        c = ((c & 0x1f) << 6) | (buf.get(p++) & 0x3f);
+                    } else if (c < 0xF0) {
+                        c = ((c & 0x0f) << 12) | ((buf.get(p++) & 0x3f) << 6) | (buf.get(p++) & 0x3f);
+                    } else {
+                        c = ((c & 0x07) << 18) | ((buf.get(p++) & 0x3f) << 12)
+                          | ((buf.get(p++) & 0x3f) << 6) | (buf.get(p++) & 0x3f);
+                    }
+                }
+                if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    if (i + 1 >= to || s.charAt(i) != Character.highSurrogate(c)
+                        || s.charAt(i + 1) != Character.lowSurrogate(c)) return false;
+                    i += 2;
+                } else {
+                    if (i >= to || charAt(s, i, fold) != c) return false;
+                    i++;
+                }
+            }
+            return i == to;
+        }
+
+        @Override public void add(String key) {
+            throw new UnsupportedOperationException("MappedDictionary is read-only; rewrite the file instead");
+        }
+
+        @Override public int size() { return keyCount; }
+    }
+
+    // ======== Blocked Bloom filter ========
+    // Each key sets k bits inside a single 512-bit block (64 bytes, so at most two cache lines
+    // since a long[] is not line-aligned), so a membership test touches one block instead of k
+    // random words. Keyed by the dictionary's own 64-bit hash, so checking the filter costs no
+    // extra hashing.
+    static final class BlockedBloomFilter {
+        private static final int WORDS_PER_BLOCK = 8;
+
+        private final long[] bits;
+        private final int blocks;
+        private final int k;
+
+        BlockedBloomFilter(int expectedKeys, double fpp) {
+            if (!(fpp > 0 && fpp < 1)) throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+            double ln2 = Math.log(2);
+            double bitsPerKey = -Math.log(fpp) / (ln2 * ln2);
+            // Blocking loads some blocks more than others, and the gap to a plain Bloom filter
+            // widens as the target tightens; 2% more bits per halving of fpp brings the measured
+            // rate back to the target down to about 0.1% (1.13x at 1%, 1.2x at 0.1%)
+            double overhead = 1 + 0.02 * (Math.log(1 / fpp) / ln2);
+            long m = (long)Math.ceil(Math.max(1, expectedKeys) * bitsPerKey * overhead);
+            this.blocks = (int)Math.min(1 << 27, (m + 511) / 512);
+            this.k = Math.max(1, Math.min(16, (int)Math.round(bitsPerKey * ln2)));
+            this.bits = new long[blocks * WORDS_PER_BLOCK];
+        }
+
+        // Any block count works: the high half of h is mapped onto [0, blocks) by multiply-shift
+        private int blockBase(long h) { return (int)(((h >>> 32) * blocks) >>> 32) * WORDS_PER_BLOCK; }
+
+        // Block from the folded hash, in-block bit positions by double hashing a remix of it
+        void add(long h) {
+            int base = blockBase(h);
+            long g = remix(h);
+            int g1 = (int)g, g2 = (int)(g >>> 32) | 1;
+            for (int i = 0; i < k; i++) {
+                int bit = (g1 + i * g2) >>> 23; // top 9 bits: 0..511
+                bits[base + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long h) {
+            int base = blockBase(h);
+            long g = remix(h);
+            int g1 = (int)g, g2 = (int)(g >>> 32) | 1;
+            for (int i = 0; i < k; i++) {
+                int bit = (g1 + i * g2) >>> 23;
+                if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private static long remix(long h) {
+            h ^= h >>> 31;
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 29);
+        }
+
+        public int hashCount() { return k; }
+        public long bitCount() { return 64L * bits.length; }
+    }
+
+    // Dictionary front-end that rejects most misses with one filter probe before the real set
+    // is consulted. Sized for expectedSize keys; adding far more raises the false-positive rate.
+    // In front of an in-memory WordSet it does not pay (Bench.bloom): hashing dominates a
+    // lookup and a set miss is already a single bucket probe, so the game does not use it.
+    static final class BloomFilteredDictionary implements WordDictionary {
+        private final WordSet dict;
+        private final BlockedBloomFilter filter;
+        private long rejected;       // filter said no: answered without touching the set
+        private long hits;           // filter said maybe, set confirmed
+        private long falsePositives; // filter said maybe, set said no
+
+        BloomFilteredDictionary(WordSet set, int expectedSize, double fpp) {
+            this.dict = set;
+            this.filter = new BlockedBloomFilter(Math.max(expectedSize, set.size()), fpp);
+            set.forEachKey(key -> filter.add(set.hash(key)));
+        }
+
+        @Override public long hash(String key) { return dict.hash(key); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return dict.hashFolded(s, from, to); }
+
+        @Override public boolean contains(String key, long h) {
+            if (!filter.mightContain(h)) { rejected++; return false; }
+            return count(dict.contains(key, h));
+        }
+
+        @Override public boolean contains(CharSequence s, int from, int to) {
+            long h = dict.hashFolded(s, from, to);
+            if (!filter.mightContain(h)) { rejected++; return false; }
+            return count(dict.contains(s, from, to, h)); // hashed once for both
+        }
+
+        private boolean count(boolean found) {
+            if (found) hits++;
+            else falsePositives++;
+            return found;
+        }
+
+        @Override public void add(String key) {
+            dict.add(key);
+            filter.add(dict.hash(key));
+        }
+
+        @Override public int size() { return dict.size(); }
+
+        public long rejected() { return rejected; }
+        public long hits() { return hits; }
+        public long falsePositives() { return falsePositives; }
+        public BlockedBloomFilter filter() { return filter; }
+
+        @Override public String toString() {
+            return String.format("bloom: rejected=%d hits=%d falsePositives=%d", rejected, hits, falsePositives);
+        }
+    }
+
+    // ======== Cuckoo filter ========
+    // Approximate word set that, unlike a Bloom filter, can delete. Each key leaves only an
+    // f-bit fingerprint in one of two candidate buckets of 4 slots; the second bucket is
+    // derived from the first and the fingerprint alone (partial-key cuckoo hashing), so
+    // entries can be relocated without the original key. Keyed by the same HashStrategy as a
+    // WordSet, so a set's words can be loaded without rehashing their text. False-positive rate
+    // is about 8 / 2^f; there are no false negatives unless a key is removed that was never added.
+    static final class CuckooFilter implements WordDictionary {
+        private static final int SLOTS_PER_BUCKET = 4;
+        private static final int MAX_KICKS = 500;
+        // Cuckoo tables with 4-slot buckets fill to ~95% before inserts start failing
+        private static final double MAX_LOAD = 0.95;
+
+        private final HashStrategy strategy;
+        private final int bits;       // fingerprint width
+        private final long fpMask;
+        private final int buckets;    // power of two
+        private final long[] table;   // bucket b, slot s holds the fingerprint at bit (4b + s) * bits; 0 = empty
+        private int count;
+        private long victim;          // fingerprint evicted by a failed insert, kept so it is not lost
+        private int victimBucket;
+        private long rng = 0x9E3779B97F4A7C15L;
+
+        CuckooFilter(int expectedKeys, int fingerprintBits, HashStrategy strategy) {
+            if (fingerprintBits < 4 || fingerprintBits > 32) {
+                throw new IllegalArgumentException("fingerprintBits must be in [4, 32]: " + fingerprintBits);
+            }
+            this.strategy = Objects.requireNonNull(strategy, "strategy");
+            this.bits = fingerprintBits;
+            this.fpMask = (1L << fingerprintBits) - 1;
+            long needed = (long)Math.ceil(Math.max(1, expectedKeys) / (SLOTS_PER_BUCKET * MAX_LOAD));
+            this.buckets = tableSizeFor((int)Math.min(1 << 30, needed));
+            // One spare word so a fingerprint straddling the last boundary needs no bounds check
+            this.table = new long[(int)(((long)buckets * SLOTS_PER_BUCKET * bits + 63) >>> 6) + 1];
+        }
+
+        // Filter holding every word of set, hashed with the set's own strategy
+        static CuckooFilter of(WordSet set, int fingerprintBits) {
+            CuckooFilter f = new CuckooFilter(set.size(), fingerprintBits, set.strategy());
+            set.forEachKey(key -> {
+                if (!f.add(f.hash(key))) throw new IllegalStateException("CuckooFilter is full at " + f.size() + " keys");
+            });
+            return f;
+        }
+
+        @Override public long hash(String key) { return strategy.hash(key); }
+        @Override public long hashFolded(CharSequence s, int from, int to) { return strategy.hashFolded(s, from, to); }
+
+        // Approximate: may report words that were never added
+        @Override public boolean contains(String key, long h) { return mightContain(h); }
+        @Override public boolean contains(CharSequence s, int from, int to) { return mightContain(hashFolded(s, from, to)); }
+
+        @Override public void add(String key) {
+            if (!add(hash(key))) throw new IllegalStateException("CuckooFilter is full at " + count + " keys");
+        }
+
+        // Only remove words that were added; otherwise another word sharing the fingerprint may vanish
+        public boolean remove(String key) { return remove(hash(key)); }
+
+        // Adding a key twice stores two copies, and each remove takes one. false means the filter
+        // is full and the key was not stored.
+        boolean add(long h) {
+            if (victim != 0) return false;
+            long fp = fingerprint(h);
+            int i1 = indexFor(h, buckets);
+            int i2 = altIndex(i1, fp);
+            count++;
+            if (!insertInto(i1, fp) && !insertInto(i2, fp)) relocate((next() & 1) == 0 ? i1 : i2, fp);
+            return true;
+        }
+
+        // Both buckets of fp are full: evict a random resident of bucket i into its other bucket,
+        // and so on. Out of kicks, the homeless fingerprint is parked as the victim and the
+        // filter refuses adds until a remove makes room.
+        private void relocate(int i, long fp) {
+            for (int kick = 0; kick < MAX_KICKS; kick++) {
+                int slot = i * SLOTS_PER_BUCKET + (next() & (SLOTS_PER_BUCKET - 1));
+                long evicted = get(slot);
+                set(slot, fp);
+                fp = evicted;
+                i = altIndex(i, fp);
+                if (insertInto(i, fp)) return;
+            }
+            victim = fp;
+            victimBucket = i;
+        }
+
+        boolean mightContain(long h) {
+            long fp = fingerprint(h);
+            int i1 = indexFor(h, buckets);
+            int i2 = altIndex(i1, fp);
+            if (bucketHas(i1, fp) || bucketHas(i2, fp)) return true;
+            return victim == fp && (victimBucket == i1 || victimBucket == i2);
+        }
+
+        boolean remove(long h) {
+            long fp = fingerprint(h);
+            int i1 = indexFor(h, buckets);
+            int i2 = altIndex(i1, fp);
+            if (removeFrom(i1, fp) || removeFrom(i2, fp)) {
+                count--;
+                // A slot opened up, so the parked victim may fit again
+                if (victim != 0) {
+                    long v = victim;
+                    victim = 0;
+                    if (!insertInto(victimBucket, v) && !insertInto(altIndex(victimBucket, v), v)) relocate(victimBucket, v);
+                }
+                return true;
+            }
+            if (victim == fp && (victimBucket == i1 || victimBucket == i2)) {
+                victim = 0;
+                count--;
+                return true;
+            }
+            return false;
+        }
+
+        // Non-zero f-bit fingerprint from bits of h that indexFor does not lean on
+        private long fingerprint(long h) {
+            h ^= h >>> 31;
+            h *= 0xBF58476D1CE4E5B9L;
+            long fp = (h ^ (h >>> 29)) >>> (64 - bits);
+            return fp == 0 ? 1 : fp;
+        }
+
+        // i ^ hash(fp) is an involution, so either bucket leads to the other
+        private int altIndex(int i, long fp) { return (i ^ (int)mix64(fp)) & (buckets - 1); }
+
+        private boolean insertInto(int bucket, long fp) {
+            for (int s = bucket * SLOTS_PER_BUCKET, end = s + SLOTS_PER_BUCKET; s < end; s++) {
+                if (get(s) == 0) {
+                    set(s, fp);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean bucketHas(int bucket, long fp) {
+            for (int s = bucket * SLOTS_PER_BUCKET, end = s + SLOTS_PER_BUCKET; s < end; s++) {
+                if (get(s) == fp) return true;
+            }
+            return false;
+        }
+
+        private boolean removeFrom(int bucket, long fp) {
+            for (int s = bucket * SLOTS_PER_BUCKET, end = s + SLOTS_PER_BUCKET; s < end; s++) {
+                if (get(s) == fp) {
+                    set(s, 0);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Fingerprint of slot; may straddle two words
+        private long get(int slot) {
+            long pos = (long)slot * bits;
+            int w = (int)(pos >>> 6), off = (int)(pos & 63);
+            long v = table[w] >>> off;
+            if (off + bits > 64) v |= table[w + 1] << (64 - off);
+            return v & fpMask;
+        }
+
+        private void set(int slot, long fp) {
+            long pos = (long)slot * bits;
+            int w = (int)(pos >>> 6), off = (int)(pos & 63);
+            table[w] = (table[w] & ~(fpMask << off)) | (fp << off);
+            if (off + bits > 64) {
+                int spill = 64 - off;
+                table[w + 1] = (table[w + 1] & ~(fpMask >>> spill)) | (fp >>> spill);
+            }
+        }
+
+        // xorshift64 for choosing eviction victims
+        private int next() {
+            rng ^= rng << 13;
+            rng ^= rng >>> 7;
+            rng ^= rng << 17;
+            return (int)rng;
+        }
+
+        @Override public int size() { return count; }
+
+        public int fingerprintBits() { return bits; }
+        public double loadFactor() { return count / (double)(buckets * SLOTS_PER_BUCKET); }
+        public long bytesUsed() { return 16 + 8L * table.length; }
+    }
+
+    // ======== Anagram index ========
+    // Dictionary words grouped by letter multiset, so all valid answers for a scramble come
+    // back from one lookup. The signature is the letter counts packed 4 bits per letter into
+    // two longs (a-m and n-z), computed in a single pass: nothing is sorted, per word or per guess.
+    static final class AnagramIndex {
+        private static final long UNSUPPORTED = -1L; // non a-z letter, or a letter repeated > 15 times
+
+        private final Map<Long, List<String>> bySignature = new HashMap<>();
+
+        AnagramIndex(Iterable<String> words) {
+            for (String w : words) add(w);
+        }
+
+        void add(String word) {
+            long lo = signature(word, 0, word.length(), 'a');
+            long hi = signature(word, 0, word.length(), 'n');
+            if (lo == UNSUPPORTED || hi == UNSUPPORTED) return;
+            List<String> group = bySignature.computeIfAbsent(key(lo, hi), k -> new ArrayList<>(2));
+            if (!group.contains(word)) group.add(word);
+        }
+
+        // Every indexed word made of exactly the letters of s (case-insensitive)
+        public List<String> anagramsOf(CharSequence s) {
+            long lo = signature(s, 0, s.length(), 'a');
+            long hi = signature(s, 0, s.length(), 'n');
+            if (lo == UNSUPPORTED || hi == UNSUPPORTED) return Collections.emptyList();
+            List<String> group = bySignature.get(key(lo, hi));
+            if (group == null) return Collections.emptyList();
+            // key() can collide; drop any word whose exact signature differs
+            for (String w : group) {
+                if (signature(w, 0, w.length(), 'a') != lo || signature(w, 0, w.length(), 'n') != hi) {
+                    List<String> exact = new ArrayList<>();
+                    for (String x : group) if (sameLetters(x, 0, x.length(), s)) exact.add(x);
+                    return Collections.unmodifiableList(exact);
+                }
+            }
+            return Collections.unmodifiableList(group);
+        }
+
+        // Is s[from, to) a rearrangement of target? Case-insensitive, O(length), no allocation
+        // unless either side has letters outside a-z.
+        static boolean sameLetters(CharSequence s, int from, int to, CharSequence target) {
+            if (to - from != target.length()) return false;
+            long lo = signature(s, from, to, 'a');
+            long hi = signature(s, from, to, 'n');
+            if (lo != UNSUPPORTED && hi != UNSUPPORTED) {
+                return lo == signature(target, 0, target.length(), 'a')
+                    && hi == signature(target, 0, target.length(), 'n');
+            }
+            char[] a = foldToString(s, from, to).toCharArray();
+            char[] b = foldToString(target, 0, target.length()).toCharArray();
+            Arrays.sort(a);
+            Arrays.sort(b);
+            return Arrays.equals(a, b);
+        }
+
+        // Counts of the 13 letters starting at base ('a' or 'n'), 4 bits each
+        private static long signature(CharSequence s, int from, int to, char base) {
+            long sig = 0;
+            for (int i = from; i < to; i++) {
+                char c = fold(s.charAt(i));
+                if (c < 'a' || c > 'z') return UNSUPPORTED;
+                int slot = c - base;
+                if (slot < 0 || slot >= 13) continue;
+                if (((sig >>> (slot * 4)) & 0xF) == 0xF) return UNSUPPORTED;
+                sig += 1L << (slot * 4);
+            }
+            return sig;
+        }
+
+        private static long key(long lo, long hi) { return lo * 0x9E3779B97F4A7C15L + hi; }
+
+        public int groups() { return bySignature.size(); }
+    }
+
+    // ======== Fuzzy match index (SymSpell) ========
+    // Near-miss lookup without scanning the word list. Every word is indexed under all the strings
+    // reachable from it by deleting up to maxDistance chars. Two words within edit distance d share
+    // such a delete, so a query only generates its own deletes, collects the words filed under
+    // them, and verifies each candidate with a bounded edit distance. Memory grows with
+    // length^maxDistance per word, which is why maxDistance is capped at 2.
+    static final class FuzzyIndex {
+        private final int maxDistance;
+        private final String[] words;
+        // delete string -> ids of the words it came from; ids[0] is the count in use
+        private final SimpleHashMap<String, int[]> deletes;
+        private int longest;
+
+        FuzzyIndex(Collection<String> words, int maxDistance) {
+            if (maxDistance < 1 || maxDistance > 2) throw new IllegalArgumentException("maxDistance must be 1 or 2: " + maxDistance);
+            this.maxDistance = maxDistance;
+            this.words = new LinkedHashSet<>(words).toArray(new String[0]);
+            this.deletes = SimpleHashMap.withExpectedSize(this.words.length * 8, KeyHasher.of(SeededHash.perProcess()));
+            Set<String> variants = new HashSet<>();
+            for (int id = 0; id < this.words.length; id++) {
+                String w = this.words[id];
+                longest = Math.max(longest, w.length());
+                variants.clear();
+                collectDeletes(w, maxDistance, variants);
+                for (String v : variants) {
+                    int[] ids = deletes.get(v);
+                    if (ids == null) {
+                        ids = new int[] {0, 0};
+                    } else if (ids[0] + 1 == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length * 2);
+                    }
+                    ids[++ids[0]] = id;
+                    deletes.put(v, ids);
+                }
+            }
+        }
+
+        // s itself plus every string from deleting up to d of its chars
+        private static void collectDeletes(String s, int d, Set<String> out) {
+            if (!out.add(s) || d == 0) return;
+            for (int i = 0; i < s.length(); i++) {
+                collectDeletes(s.substring(0, i) + s.substring(i + 1), d - 1, out);
+            }
+        }
+
+        static final class Match {
+            final String word;
+            final int distance;
+
+            Match(String word, int distance) {
+                this.word = word;
+                this.distance = distance;
+            }
+
+            @Override public String toString() { return word + " (" + distance + ")"; }
+        }
+
+        // Indexed words within maxDistance edits of the case-folded s[from, to), closest first
+        public List<Match> lookup(CharSequence s, int from, int to) {
+            if (to - from > longest + maxDistance) return Collections.emptyList();
+            String query = foldToString(s, from, to);
+            Set<String> variants = new HashSet<>();
+            collectDeletes(query, maxDistance, variants);
+            IntHashSet seen = new IntHashSet(64);
+            List<Match> out = new ArrayList<>();
+            for (String v : variants) {
+                int[] ids = deletes.get(v);
+                if (ids == null) continue;
+                for (int i = 1; i <= ids[0]; i++) {
+                    if (!seen.add(ids[i])) continue;
+                    String w = words[ids[i]];
+                    int d = distance(query, w, maxDistance);
+                    if (d <= maxDistance) out.add(new Match(w, d));
+                }
+            }
+            out.sort(Comparator.<Match>comparingInt(m -> m.distance).thenComparing(m -> m.word));
+            return out;
+        }
+
+        // Closest indexed word, or null if none is within maxDistance
+        public String suggest(CharSequence s, int from, int to) {
+            List<Match> matches = lookup(s, from, to);
+            return matches.isEmpty() ? null : matches.get(0).word;
+        }
+
+        // Optimal string alignment distance (adjacent swaps count as one edit), or max + 1 once it
+        // is known to exceed max. Only the diagonal band of width 2 * max + 1 is filled.
+        static int distance(String a, String b, int max) {
+            int n = a.length(), m = b.length();
+            if (Math.abs(n - m) > max) return max + 1;
+            int big = max + 1;
+            int[] prev2 = new int[m + 1], prev = new int[m + 1], cur = new int[m + 1];
+            for (int j = 0; j <= m; j++) prev[j] = Math.min(j, big);
+            for (int i = 1; i <= n; i++) {
+                int lo = Math.max(1, i - max), hi = Math.min(m, i + max);
+                cur[0] = Math.min(i, big);
+                if (lo > 1) cur[lo - 1] = big;
+                int rowMin = cur[0];
+                for (int j = lo; j <= hi; j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    int v = Math.min(prev[j - 1] + cost, Math.min(prev[j] + 1, cur[j - 1] + 1));
+                    if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                        v = Math.min(v, prev2[j - 2] + 1);
+                    }
+                    cur[j] = Math.min(v, big);
+                    rowMin = Math.min(rowMin, cur[j]);
+                }
+                if (hi < m) cur[hi + 1] = big;
+                if (rowMin > max) return big;
+                int[] t = prev2; prev2 = prev; prev = cur; cur = t;
+            }
+            return prev[m];
+        }
+
+        public int maxDistance() { return maxDistance; }
+        public int deleteEntries() { return deletes.size(); }
+    }
+
+    // ======== AVL Tree for Leaderboard ========
+    static class PlayerScore {
+        String name;
+        int score;
+        PlayerScore(String n, int s) { name = n; score = s; }
+        // Compare by score, then name to break ties
+        static final Comparator<PlayerScore> ORDER = (a, b) -> {
+            if (a.score != b.score) return Integer.compare(a.score, b.score);
+            return a.name.compareToIgnoreCase(b.name);
+        };
+        @Override public String toString() { return name + " (" + score + ")"; }
+    }
+
+    static class AVLTree<T> {
+        static class Node<T> {
+            T val;
+            Node<T> left, right;
+            int height;
+            int count; // nodes in this subtree, for rank and select
+            Node(T v) { val = v; height = 1; count = 1; }
+        }
+
+        private Node<T> root;
+        private int size;
+        private final Comparator<? super T> cmp;
+
+        AVLTree(Comparator<? super T> cmp) { this.cmp = Objects.requireNonNull(cmp, "cmp"); }
+
+        private int compare(T a, T b) { return cmp.compare(a, b); }
+
+        private int height(Node<T> n) { return n == null ? 0 : n.height; }
+        private int count(Node<T> n) { return n == null ? 0 : n.count; }
+        private int balanceFactor(Node<T> n) { return n == null ? 0 : height(n.left) - height(n.right); }
+        private void update(Node<T> n) {
+            n.height = 1 + Math.max(height(n.left), height(n.right));
+            n.count = 1 + count(n.left) + count(n.right);
+        }
+
+        private Node<T> rotateRight(Node<T> y) {
+            Node<T> x = y.left;
+            Node<T> T2 = x.right;
+            x.right = y;
+            y.left = T2;
+            update(y); update(x);
+            return x;
+        }
+        private Node<T> rotateLeft(Node<T> x) {
+            Node<T> y = x.right;
+            Node<T> T2 = y.left;
+            y.left = x;
+            x.right = T2;
+            update(x); update(y);
+            return y;
+        }
+
+        private int modCount; // structural changes, for fail-fast iterators
+
+        public void insert(T val) {
+            int before = size;
+            root = insert(root, val);
+            if (size != before) modCount++;
+        }
+        private Node<T> insert(Node<T> node, T val) {
+            if (node == null) { size++; return new Node<>(val); }
+
+            int cmp = compare(val, node.val);
+            if (cmp < 0) node.left = insert(node.left, val);
+            else if (cmp > 0) node.right = insert(node.right, val);
+            else {
+                // equal keys -> keep one; you could choose to update the stored value here
+                return node;
+            }
+
+            update(node);
+            int bf = balanceFactor(node);
+
+            // LL
+            if (bf > 1 && compare(val, node.left.val) < 0)
+                return rotateRight(node);
+            // RR
+            if (bf < -1 && compare(val, node.right.val) > 0)
+                return rotateLeft(node);
+            // LR
+            if (bf > 1 && compare(val, node.left.val) > 0) {
+                node.left = rotateLeft(node.left);
+                return rotateRight(node);
+            }
+            // RL
+            if (bf < -1 && compare(val, node.right.val) < 0) {
+                node.right = rotateRight(node.right);
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        // Same tree as insert, without recursion or a path stack. Let s be the deepest node on the
+        // search path whose balance factor isn't zero. Every node below s is balanced, so each one
+        // grows a level taller; s either absorbs that or rotates back to its old height, and no
+        // ancestor of s changes height. So the descent bumps the counts and remembers s, and
+        // rebalancing stops at s after a short second walk down from it fixing heights.
+        public void insertIterative(T val) {
+            if (root == null) {
+                root = new Node<>(val);
+                size++;
+                modCount++;
+                return;
+            }
+            Node<T> s = root, sParent = null, parent = null, cur = root;
+            int c;
+            for (;;) {
+                c = compare(val, cur.val);
+                if (c == 0) { // equal keys -> keep one, undoing the counts bumped so far
+                    for (Node<T> n = root; n != cur; n = compare(val, n.val) < 0 ? n.left : n.right) n.count--;
+                    return;
+                }
+                if (balanceFactor(cur) != 0) {
+                    s = cur;
+                    sParent = parent;
+                }
+                cur.count++;
+                parent = cur;
+                Node<T> next = c < 0 ? cur.left : cur.right;
+                if (next == null) break;
+                cur = next;
+            }
+            Node<T> leaf = new Node<>(val);
+            if (c < 0) cur.left = leaf;
+            else cur.right = leaf;
+            size++;
+            modCount++;
+            for (Node<T> n = compare(val, s.val) < 0 ? s.left : s.right; n != leaf; n = compare(val, n.val) < 0 ? n.left : n.right) {
+                n.height++;
+            }
+            Node<T> sub = rebalance(s);
+            if (sub == s) return;
+            if (sParent == null) root = sub;
+            else if (sParent.left == s) sParent.left = sub;
+            else sParent.right = sub;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newPath(int height) { return (Node<T>[])new Node<?>[height]; }
+
+        public boolean remove(T val) {
+            int before = size;
+            root = remove(root, val);
+            if (size == before) return false;
+            modCount++;
+            return true;
+        }
+        private Node<T> remove(Node<T> node, T val) {
+            if (node == null) return null;
+            int cmp = compare(val, node.val);
+            if (cmp < 0) node.left = remove(node.left, val);
+            else if (cmp > 0) node.right = remove(node.right, val);
+            else {
+                size--;
+                if (node.left == null) return node.right;
+                if (node.right == null) return node.left;
+                // two children: pull up the in-order successor
+                Node<T> succ = node.right;
+                while (succ.left != null) succ = succ.left;
+                node.val = succ.val;
+                node.right = removeMin(node.right);
+            }
+            return rebalance(node);
+        }
+        private Node<T> removeMin(Node<T> node) {
+            if (node.left == null) return node.right;
+            node.left = removeMin(node.left);
+            return rebalance(node);
+        }
+
+        private Node<T> rebalance(Node<T> node) {
+            update(node);
+            int bf = balanceFactor(node);
+            if (bf > 1) {
+                if (balanceFactor(node.left) < 0) node.left = rotateLeft(node.left); // LR
+                return rotateRight(node);
+            }
+            if (bf < -1) {
+                if (balanceFactor(node.right) > 0) node.right = rotateRight(node.right); // RL
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        // Descend without building a probe value: probe(v) < 0 means the target sorts before v
+        public T find(ToIntFunction<? super T> probe) {
+            Node<T> cur = root;
+            while (cur != null) {
+                int c = probe.applyAsInt(cur.val);
+                if (c == 0) return cur.val;
+                cur = c < 0 ? cur.left : cur.right;
+            }
+            return null;
+        }
+
+        public int size() { return size; }
+
+        // ---- Order statistics ----
+        // Ranks count from the top like topK: rank 1 is the greatest element. Each step down
+        // skips a whole right subtree by its count, so all three are O(log n).
+
+        // Rank of val, or -1 if it is not in the tree
+        public int rankOf(T val) {
+            int rank = 1;
+            Node<T> cur = root;
+            while (cur != null) {
+                int c = compare(val, cur.val);
+                if (c == 0) return rank + count(cur.right);
+                if (c < 0) {
+                    rank += 1 + count(cur.right);
+                    cur = cur.left;
+                } else {
+                    cur = cur.right;
+                }
+            }
+            return -1;
+        }
+
+        // Element with the given rank, 1..size()
+        public T select(int rank) {
+            if (rank < 1 || rank > size) throw new IllegalArgumentException("rank must be in [1, " + size + "]: " + rank);
+            Node<T> cur = root;
+            for (;;) {
+                int above = count(cur.right);
+                if (rank <= above) {
+                    cur = cur.right;
+                } else if (rank == above + 1) {
+                    return cur.val;
+                } else {
+                    rank -= above + 1;
+                    cur = cur.left;
+                }
+            }
+        }
+
+        // Number of elements sorting after the probe's target (same convention as find)
+        public int countAbove(ToIntFunction<? super T> probe) {
+            int n = 0;
+            Node<T> cur = root;
+            while (cur != null) {
+                int c = probe.applyAsInt(cur.val);
+                if (c < 0) {
+                    n += 1 + count(cur.right);
+                    cur = cur.left;
+                } else if (c > 0) {
+                    cur = cur.right;
+                } else {
+                    return n + count(cur.right);
+                }
+            }
+            return n;
+        }
+
+        // In-order (ascending) walk
+        public void forEach(Consumer<? super T> action) { forEach(root, action); }
+        private void forEach(Node<T> node, Consumer<? super T> action) {
+            if (node == null) return;
+            forEach(node.left, action);
+            action.accept(node.val);
+            forEach(node.right, action);
+        }
+
+        // Reverse in-order to get scores from high to low
+        public void topK(int k, List<T> out) {
+            for (Iterator<T> it = descendingIterator(); out.size() < k && it.hasNext(); ) out.add(it.next());
+        }
+
+        // The original recursive walk, kept as the baseline for Bench.avl
+        void topKRecursive(int k, List<T> out) { topK(root, k, out); }
+        private void topK(Node<T> node, int k, List<T> out) {
+            if (node == null || out.size() >= k) return;
+            topK(node.right, k, out);
+            if (out.size() < k) out.add(node.val);
+            topK(node.left, k, out);
+        }
+
+        // Greatest first, with an explicit stack of pending ancestors instead of recursion.
+        // Fails fast if the tree is modified while iterating.
+        public Iterator<T> descendingIterator() {
+            return new Iterator<T>() {
+                private final Node<T>[] stack = newPath(root == null ? 0 : root.height);
+                private int depth;
+                private final int expectedModCount = modCount;
+
+                { pushRightSpine(root); }
+
+                private void pushRightSpine(Node<T> n) {
+                    for (; n != null; n = n.right) stack[depth++] = n;
+                }
+
+                @Override public boolean hasNext() { return depth > 0; }
+
+                @Override public T next() {
+                    if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                    if (depth == 0) throw new NoSuchElementException();
+                    Node<T> n = stack[--depth];
+                    stack[depth] = null;
+                    pushRightSpine(n.left);
+                    return n.val;
+                }
+            };
+        }
+    }
+
+    // Path-copying AVL for many readers and few writers. Nodes are immutable: insert and remove
+    // rebuild only the O(log n) nodes on their path and share everything else, then publish the
+    // new root with a CAS. Readers take the current root as a snapshot and walk it without
+    // locks, never seeing a half-applied update; a writer that loses the CAS redoes its copy
+    // against the newer root. Each update allocates about log2(n) nodes, so writes cost more
+    // than in AVLTree.
+    static final class PersistentAVLTree<T> {
+        static final class Node<T> {
+            final T val;
+            final Node<T> left, right;
+            final int height;
+            final int count; // nodes in this subtree, for rank and select
+
+            Node(T val, Node<T> left, Node<T> right) {
+                this.val = val;
+                this.left = left;
+                this.right = right;
+                this.height = 1 + Math.max(height(left), height(right));
+                this.count = 1 + count(left) + count(right);
+            }
+        }
+
+        private final AtomicReference<Node<T>> root = new AtomicReference<>();
+        private final Comparator<? super T> cmp;
+
+        PersistentAVLTree(Comparator<? super T> cmp) { this.cmp = Objects.requireNonNull(cmp, "cmp"); }
+
+        private static int height(Node<?> n) { return n == null ? 0 : n.height; }
+        private static int count(Node<?> n) { return n == null ? 0 : n.count; }
+
+        // false if an equal element is already present
+        public boolean insert(T val) {
+            for (;;) {
+                Node<T> cur = root.get();
+                Node<T> next = insert(cur, val);
+                if (next == cur) return false;
+                if (root.compareAndSet(cur, next)) return true;
+            }
+        }
+
+        public boolean remove(T val) {
+            for (;;) {
+                Node<T> cur = root.get();
+                Node<T> next = remove(cur, val);
+                if (next == cur) return false;
+                if (root.compareAndSet(cur, next)) return true;
+            }
+        }
+
+        // Returns n itself when nothing changed, so callers can tell a no-op from an update
+        private Node<T> insert(Node<T> n, T val) {
+            if (n == null) return new Node<>(val, null, null);
+            int c = cmp.compare(val, n.val);
+            if (c < 0) {
+                Node<T> l = insert(n.left, val);
+                return l == n.left ? n : balance(n.val, l, n.right);
+            }
+            if (c > 0) {
+                Node<T> r = insert(n.right, val);
+                return r == n.right ? n : balance(n.val, n.left, r);
+            }
+            return n; // equal keys -> keep one
+        }
+
+        private Node<T> remove(Node<T> n, T val) {
+            if (n == null) return null;
+            int c = cmp.compare(val, n.val);
+            if (c < 0) {
+                Node<T> l = remove(n.left, val);
+                return l == n.left ? n : balance(n.val, l, n.right);
+            }
+            if (c > 0) {
+                Node<T> r = remove(n.right, val);
+                return r == n.right ? n : balance(n.val, n.left, r);
+            }
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+            // two children: the in-order successor takes n's place
+            Node<T> succ = n.right;
+            while (succ.left != null) succ = succ.left;
+            return balance(succ.val, n.left, removeMin(n.right));
+        }
+
+        private Node<T> removeMin(Node<T> n) {
+            if (n.left == null) return n.right;
+            return balance(n.val, removeMin(n.left), n.right);
+        }
+
+        // New node (val, l, r), rotated if the children's heights differ by two
+        private Node<T> balance(T val, Node<T> l, Node<T> r) {
+            int hl = height(l), hr = height(r);
+            if (hl > hr + 1) {
+                if (height(l.left) >= height(l.right)) return new Node<>(l.val, l.left, new Node<>(val, l.right, r)); // LL
+                Node<T> lr = l.right; // LR
+                return new Node<>(lr.val, new Node<>(l.val, l.left, lr.left), new Node<>(val, lr.right, r));
+            }
+            if (hr > hl + 1) {
+                if (height(r.right) >= height(r.left)) return new Node<>(r.val, new Node<>(val, l, r.left), r.right); // RR
+                Node<T> rl = r.left; // RL
+                return new Node<>(rl.val, new Node<>(val, l, rl.left), new Node<>(r.val, rl.right, r.right));
+            }
+            return new Node<>(val, l, r);
+        }
+
+        // The tree as of now; later updates never change it
+        public Snapshot<T> snapshot() { return new Snapshot<>(root.get(), cmp); }
+
+        public int size() { return count(root.get()); }
+
+        public void topK(int k, List<T> out) { snapshot().topK(k, out); }
+
+        // Read-only view of one published root. Safe to share between threads.
+        static final class Snapshot<T> implements Iterable<T> {
+            private final Node<T> root;
+            private final Comparator<? super T> cmp;
+
+            private Snapshot(Node<T> root, Comparator<? super T> cmp) {
+                this.root = root;
+                this.cmp = cmp;
+            }
+
+            public int size() { return count(root); }
+
+            public boolean contains(T val) {
+                for (Node<T> cur = root; cur != null; ) {
+                    int c = cmp.compare(val, cur.val);
+                    if (c == 0) return true;
+                    cur = c < 0 ? cur.left : cur.right;
+                }
+                return false;
+            }
+
+            // Rank from the top as in AVLTree.rankOf, or -1 if val is not in the snapshot
+            public int rankOf(T val) {
+                int rank = 1;
+                for (Node<T> cur = root; cur != null; ) {
+                    int c = cmp.compare(val, cur.val);
+                    if (c == 0) return rank + count(cur.right);
+                    if (c < 0) {
+                        rank += 1 + count(cur.right);
+                        cur = cur.left;
+                    } else {
+                        cur = cur.right;
+                    }
+                }
+                return -1;
+            }
+
+            // Element with the given rank, 1..size()
+            public T select(int rank) {
+                int size = count(root);
+                if (rank < 1 || rank > size) throw new IllegalArgumentException("rank must be in [1, " + size + "]: " + rank);
+                Node<T> cur = root;
+                for (;;) {
+                    int above = count(cur.right);
+                    if (rank <= above) {
+                        cur = cur.right;
+                    } else if (rank == above + 1) {
+                        return cur.val;
+                    } else {
+                        rank -= above + 1;
+                        cur = cur.left;
+                    }
+                }
+            }
+
+            public void topK(int k, List<T> out) {
+                for (Iterator<T> it = descendingIterator(); out.size() < k && it.hasNext(); ) out.add(it.next());
+            }
+
+            // Ascending
+            @Override public Iterator<T> iterator() { return walk(false); }
+
+            // Greatest first
+            public Iterator<T> descendingIterator() { return walk(true); }
+
+            // In-order walk with an explicit stack; no fail-fast check needed, nothing can change
+            private Iterator<T> walk(boolean descending) {
+                return new Iterator<T>() {
+                    @SuppressWarnings("unchecked")
+                    private final Node<T>[] stack = (Node<T>[])new Node<?>[height(root)];
+                    private int depth;
+
+                    { pushSpine(root); }
+
+                    private void pushSpine(Node<T> n) {
+                        for (; n != null; n = descending ? n.right : n.left) stack[depth++] = n;
+                    }
+
+                    @Override public boolean hasNext() { return depth > 0; }
+
+                    @Override public T next() {
+                        if (depth == 0) throw new NoSuchElementException();
+                        Node<T> n = stack[--depth];
+                        stack[depth] = null;
+                        pushSpine(descending ? n.left : n.right);
+                        return n.val;
+                    }
+                };
+            }
+        }
+    }
+
+    // Scores ordered by PlayerScore.ORDER, with rank queries answered from subtree counts.
+    // One entry per player: a name index beside the tree finds a player's current entry, so a
+    // new score replaces it (AVL delete + insert, O(log n)) instead of piling up duplicates.
+    // Names are case-insensitive, as in PlayerScore.ORDER.
+    static final class Leaderboard {
+        private final AVLTree<PlayerScore> tree = new AVLTree<>(PlayerScore.ORDER);
+        private final SimpleHashMap<String, PlayerScore> byName =
+            new SimpleHashMap<>(16, KeyHasher.of(SeededHash.perProcess()));
+
+        // Sets name's score, replacing any earlier entry; returns the entry now on the board
+        public PlayerScore upsert(String name, int newScore) {
+            String key = foldToString(name, 0, name.length());
+            PlayerScore old = byName.get(key);
+            if (old != null) {
+                if (old.score == newScore) return old;
+                tree.remove(old);
+            }
+            PlayerScore ps = new PlayerScore(name, newScore);
+            tree.insert(ps);
+            byName.put(key, ps);
+            return ps;
+        }
+
+        public boolean remove(String name) {
+            PlayerScore old = byName.remove(foldToString(name, 0, name.length()));
+            return old != null && tree.remove(old);
+        }
+
+        // Current entry for name, or null
+        public PlayerScore get(String name) { return byName.get(foldToString(name, 0, name.length())); }
+
+        // 1 for the best score, or -1 if name is not on the board
+        public int rankOf(String name) {
+            PlayerScore ps = get(name);
+            return ps == null ? -1 : tree.rankOf(ps);
+        }
+
+        public PlayerScore select(int rank) { return tree.select(rank); }
+
+        // Entries with a strictly higher score
+        public int countAbove(int score) { return tree.countAbove(p -> p.score > score ? -1 : 1); }
+
+        public List<PlayerScore> top(int k) {
+            List<PlayerScore> out = new ArrayList<>(Math.min(k, tree.size()));
+            tree.topK(k, out);
+            return out;
+        }
+
+        public int size() { return tree.size(); }
+    }
+
+    // ======== Compact leaderboard (struct-of-arrays AVL) ========
+    // Names interned once, case-insensitively: each distinct name gets a dense int id and its
+    // chars live in one shared char[]. Lookup is open addressing over ids (slot 0 = empty, else
+    // id + 1) with the hash kept per id, so a million names are five arrays, not a million Strings.
+    static final class NamePool {
+        private static final HashStrategy HASH = SeededHash.perProcess();
+
+        private char[] chars = new char[256];
+        private int[] start = new int[17]; // name id has chars start[id] .. start[id + 1]
+        private int[] hashes = new int[16];
+        private int[] slots = new int[32];
+        private int size;
+
+        private static int hashOf(CharSequence s) {
+            long h = HASH.hashFolded(s, 0, s.length());
+            return (int)(h ^ (h >>> 32));
+        }
+
+        // Id of name, or -1
+        int find(CharSequence name) {
+            int h = hashOf(name);
+            for (int i = indexFor(h, slots.length); ; i = (i + 1) & (slots.length - 1)) {
+                int id = slots[i] - 1;
+                if (id < 0) return -1;
+                if (hashes[id] == h && equalsFolded(id, name)) return id;
+            }
+        }
+
+        // Id of name, adding it (spelled as given) if no case-insensitive match exists
+        int intern(CharSequence name) {
+            int h = hashOf(name);
+            int i = indexFor(h, slots.length);
+            for (; slots[i] != 0; i = (i + 1) & (slots.length - 1)) {
+                int id = slots[i] - 1;
+                if (hashes[id] == h && equalsFolded(id, name)) return id;
+            }
+            int id = size++;
+            if (id == hashes.length) {
+                hashes = Arrays.copyOf(hashes, id * 2);
+                start = Arrays.copyOf(start, id * 2 + 1);
+            }
+            int from = start[id], to = from + name.length();
+            if (to > chars.length) chars = Arrays.copyOf(chars, Math.max(to, chars.length * 2));
+            for (int j = 0; j < name.length(); j++) chars[from + j] = name.charAt(j);
+            start[id + 1] = to;
+            hashes[id] = h;
+            slots[i] = id + 1;
+            if (size * 2 > slots.length) rehash(slots.length * 2);
+            return id;
+        }
+
+        private void rehash(int capacity) {
+            slots = new int[capacity];
+            for (int id = 0; id < size; id++) {
+                int i = indexFor(hashes[id], capacity);
+                while (slots[i] != 0) i = (i + 1) & (capacity - 1);
+                slots[i] = id + 1;
+            }
+        }
+
+        private boolean equalsFolded(int id, CharSequence s) {
+            int from = start[id];
+            if (start[id + 1] - from != s.length()) return false;
+            for (int j = 0; j < s.length(); j++) {
+                if (fold(chars[from + j]) != fold(s.charAt(j))) return false;
+            }
+            return true;
+        }
+
+        // String.compareToIgnoreCase order, straight from the pool
+        int compareIgnoreCase(int a, int b) {
+            int i = start[a], endA = start[a + 1], j = start[b], endB = start[b + 1];
+            for (; i < endA && j < endB; i++, j++) {
+                char c1 = chars[i], c2 = chars[j];
+                if (c1 == c2) continue;
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 == c2) continue;
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+                if (c1 != c2) return c1 - c2;
+            }
+            return (endA - i) - (endB - j);
+        }
+
+        String name(int id) { return new String(chars, start[id], start[id + 1] - start[id]); }
+
+        int size() { return size; }
+
+        long bytesUsed() {
+            return (16 + 2L * chars.length) + (16 + 4L * start.length) + (16 + 4L * hashes.length) + (16 + 4L * slots.length);
+        }
+    }
+
+    // Same board as Leaderboard, but an AVL tree of parallel int arrays instead of Node and
+    // PlayerScore objects: node t is (left[t], right[t], height[t], count[t], score[t], name[t]),
+    // with names as NamePool ids. The GC sees a dozen arrays rather than several objects per
+    // player, and an entry costs 24 bytes of tree plus its pooled chars. Node 0 is a nil sentinel
+    // (height 0, count 0) so child reads need no null checks; removed nodes go on a free list
+    // chained through left[]. A player's display name is the spelling first seen for it.
+    static final class CompactLeaderboard {
+        private final NamePool names = new NamePool();
+        private int[] nodeOf = new int[16]; // name id -> its node, 0 if not on the board
+        private int[] left, right, height, count, score, name;
+        private int root;
+        private int size;
+        private int allocated = 1; // nodes handed out so far, counting nil
+        private int freeHead;
+
+        CompactLeaderboard() { this(16); }
+
+        CompactLeaderboard(int expectedSize) {
+            if (expectedSize < 0) throw new IllegalArgumentException("expectedSize must be >= 0: " + expectedSize);
+            int cap = Math.max(16, expectedSize + 1);
+            left = new int[cap];
+            right = new int[cap];
+            height = new int[cap];
+            count = new int[cap];
+            score = new int[cap];
+            name = new int[cap];
+        }
+
+        // Sets name's score, replacing any earlier entry
+        public void upsert(String player, int newScore) {
+            int id = names.intern(player);
+            if (id == nodeOf.length) nodeOf = Arrays.copyOf(nodeOf, id * 2);
+            int n = nodeOf[id];
+            if (n != 0) {
+                if (score[n] == newScore) return;
+                root = delete(root, score[n], id);
+                size--;
+            }
+            n = allocate(newScore, id);
+            root = insert(root, n);
+            nodeOf[id] = n;
+            size++;
+        }
+
+        public boolean remove(String player) {
+            int id = names.find(player);
+            if (id < 0 || nodeOf[id] == 0) return false;
+            root = delete(root, score[nodeOf[id]], id);
+            nodeOf[id] = 0;
+            size--;
+            return true;
+        }
+
+        // Current entry for name, or null
+        public PlayerScore get(String player) {
+            int n = nodeFor(player);
+            return n == 0 ? null : entry(n);
+        }
+
+        // 1 for the best score, or -1 if name is not on the board
+        public int rankOf(String player) {
+            int n = nodeFor(player);
+            if (n == 0) return -1;
+            int s = score[n], id = name[n];
+            int rank = 1;
+            for (int t = root; ; ) {
+                int c = compare(s, id, t);
+                if (c == 0) return rank + count[right[t]];
+                if (c < 0) {
+                    rank += 1 + count[right[t]];
+                    t = left[t];
+                } else {
+                    t = right[t];
+                }
+            }
+        }
+
+        public PlayerScore select(int rank) {
+            if (rank < 1 || rank > size) throw new IllegalArgumentException("rank must be in [1, " + size + "]: " + rank);
+            int t = root;
+            for (;;) {
+                int above = count[right[t]];
+                if (rank <= above) {
+                    t = right[t];
+                } else if (rank == above + 1) {
+                    return entry(t);
+                } else {
+                    rank -= above + 1;
+                    t = left[t];
+                }
+            }
+        }
+
+        // Entries with a strictly higher score
+        public int countAbove(int s) {
+            int n = 0;
+            for (int t = root; t != 0; ) {
+                if (score[t] > s) {
+                    n += 1 + count[right[t]];
+                    t = left[t];
+                } else {
+                    t = right[t];
+                }
+            }
+            return n;
+        }
+
+        // Greatest first, reverse in-order with an explicit stack
+        public List<PlayerScore> top(int k) {
+            List<PlayerScore> out = new ArrayList<>(Math.min(k, size));
+            int[] stack = new int[height[root]];
+            int depth = 0;
+            for (int t = root; t != 0; t = right[t]) stack[depth++] = t;
+            while (depth > 0 && out.size() < k) {
+                int t = stack[--depth];
+                out.add(entry(t));
+                for (int c = left[t]; c != 0; c = right[c]) stack[depth++] = c;
+            }
+            return out;
+        }
+
+        public int size() { return size; }
+
+        // Heap taken by the node arrays, the name index and the pool (16-byte array headers)
+        public long bytesUsed() { return 6 * (16 + 4L * left.length) + (16 + 4L * nodeOf.length) + names.bytesUsed(); }
+
+        private int nodeFor(String player) {
+            int id = names.find(player);
+            return id < 0 ? 0 : nodeOf[id];
+        }
+
+        private PlayerScore entry(int t) { return new PlayerScore(names.name(name[t]), score[t]); }
+
+        // PlayerScore.ORDER on (s, id) vs node t; ids break the tie if two pooled names only
+        // differ in ways compareToIgnoreCase ignores, so distinct players never compare equal
+        private int compare(int s, int id, int t) {
+            if (s != score[t]) return Integer.compare(s, score[t]);
+            int c = names.compareIgnoreCase(id, name[t]);
+            return c != 0 ? c : Integer.compare(id, name[t]);
+        }
+
+        private int allocate(int s, int id) {
+            int n = freeHead;
+            if (n != 0) {
+                freeHead = left[n];
+            } else {
+                n = allocated++;
+                if (n == left.length) grow();
+            }
+            left[n] = 0;
+            right[n] = 0;
+            height[n] = 1;
+            count[n] = 1;
+            score[n] = s;
+            name[n] = id;
+            return n;
         }
 
-        private Node[] buckets;
-        private int capacity;
-        private int size;
+        private void release(int n) {
+            left[n] = freeHead;
+            freeHead = n;
+        }
 
-        public SimpleHashSet(int capacity) {
-            this.capacity = Math.max(17, capacity);
-            this.buckets = new Node[this.capacity];
-            this.size = 0;
+        private void grow() {
+            int cap = left.length + (left.length >> 1);
+            left = Arrays.copyOf(left, cap);
+            right = Arrays.copyOf(right, cap);
+            height = Arrays.copyOf(height, cap);
+            count = Arrays.copyOf(count, cap);
+            score = Arrays.copyOf(score, cap);
+            name = Arrays.copyOf(name, cap);
         }
 
-        // Simple djb2-style hash (compact, decent distribution for demo)
-        private int hash(String s) {
-            long h = 5381;
-            for (int i = 0; i < s.length(); i++) {
-                h = ((h << 5) + h) + s.charAt(i); // h * 33 + c
+        // Keys are unique per player, so x never ties with a node already in the tree
+        private int insert(int t, int x) {
+            if (t == 0) return x;
+            if (compare(score[x], name[x], t) < 0) left[t] = insert(left[t], x);
+            else right[t] = insert(right[t], x);
+            return rebalance(t);
+        }
+
+        // Removes the entry (s, id), which must be present
+        private int delete(int t, int s, int id) {
+            int c = compare(s, id, t);
+            if (c < 0) {
+                left[t] = delete(left[t], s, id);
+            } else if (c > 0) {
+                right[t] = delete(right[t], s, id);
+            } else {
+                int l = left[t], r = right[t];
+                if (l == 0 || r == 0) {
+                    release(t);
+                    return l == 0 ? r : l;
+                }
+                // two children: move the in-order successor's entry into t
+                int succ = r;
+                while (left[succ] != 0) succ = left[succ];
+                score[t] = score[succ];
+                name[t] = name[succ];
+                nodeOf[name[t]] = t;
+                right[t] = deleteMin(r);
             }
-            if (h < 0) h = -h;
-            return (int)(h % capacity);
+            return rebalance(t);
         }
 
-        public boolean contains(String key) {
-            int idx = hash(key);
-            Node cur = buckets[idx];
-            while (cur != null) {
-                if (cur.key.equals(key)) return true;
-                cur = cur.next;
+        private int deleteMin(int t) {
+            if (left[t] == 0) {
+                int r = right[t];
+                release(t);
+                return r;
             }
-            return false;
+            left[t] = deleteMin(left[t]);
+            return rebalance(t);
         }
 
-        public void add(String key) {
-            int idx = hash(key);
-            Node cur = buckets[idx];
-            while (cur != null) {
-                if (cur.key.equals(key)) return; // already there
-                cur = cur.next;
+        private void update(int t) {
+            height[t] = 1 + Math.max(height[left[t]], height[right[t]]);
+            count[t] = 1 + count[left[t]] + count[right[t]];
+        }
+
+        private int balanceFactor(int t) { return height[left[t]] - height[right[t]]; }
+
+        private int rotateRight(int y) {
+            int x = left[y];
+            left[y] = right[x];
+            right[x] = y;
+            update(y); update(x);
+            return x;
+        }
+
+        private int rotateLeft(int x) {
+            int y = right[x];
+            right[x] = left[y];
+            left[y] = x;
+            update(x); update(y);
+            return y;
+        }
+
+        private int rebalance(int t) {
+            update(t);
+            int bf = balanceFactor(t);
+            if (bf > 1) {
+                if (balanceFactor(left[t]) < 0) left[t] = rotateLeft(left[t]); // LR
+                return rotateRight(t);
+            }
+            if (bf < -1) {
+                if (balanceFactor(right[t]) > 0) right[t] = rotateRight(right[t]); // RL
+                return rotateLeft(t);
+            }
+            return t;
+        }
+    }
+
+    // ======== Memory-mapped leaderboard ========
+    // Leaderboard whose AVL nodes live in a mapped file, so a restarted process opens it and
+    // serves top() at once: no load phase and no per-entry objects. Layout (big-endian):
+    //   header  magic, version, seed (long), capacity, allocated, root, size, freeHead,
+    //           slotCount, dirty flag, freeCount, zero padding to 64 bytes
+    //   nodes   capacity x 64-byte records, each starting with its kind. An entry holds left,
+    //           right, height, count, score, name hash, first overflow record, unsigned short
+    //           UTF-8 length and the first 30 name bytes; longer names continue in a chain of
+    //           overflow records (next, 56 bytes). Free records chain through the same next
+    //           field. Record 0 is the nil sentinel (all zero)
+    //   slots   slotCount ints: node per name, open addressing on the name hash, 0 = empty
+    // Every update writes through the mapping, but only force() makes it durable. The first
+    // update after a checkpoint flushes the dirty flag before touching any record, and force()
+    // clears it once the rest is flushed. open() refuses a dirty file; openOrRepair() rebuilds
+    // it from the entry records whose names still match their hash.
+    static final class MappedLeaderboard implements AutoCloseable {
+        private static final int MAGIC = 0x4c425244; // "LBRD"
+        private static final int VERSION = 2;
+        private static final int HEADER_BYTES = 64;
+        private static final int RECORD_BYTES = 64;
+        private static final int FREE = 0, ENTRY = 1, OVERFLOW = 2;
+        // LEFT is also the next link of free and overflow records
+        private static final int KIND = 0, LEFT = 4, RIGHT = 8, HEIGHT = 12, COUNT = 16, SCORE = 20,
+            HASH = 24, MORE = 28, NAME = 32, DATA = 8;
+        private static final int INLINE_NAME_BYTES = RECORD_BYTES - NAME - 2;
+        private static final int OVERFLOW_BYTES = RECORD_BYTES - DATA;
+        static final int MAX_NAME_BYTES = 0xffff;
+        // Keeps the whole file under the 2 GB MappedByteBuffer limit
+        private static final int MAX_CAPACITY = 1 << 24;
+
+        private final FileChannel ch;
+        private MappedByteBuffer buf;
+        private final long seed;
+        private int capacity, allocated, root, size, freeHead, slotCount, freeCount;
+        private boolean dirty;
+
+        private MappedLeaderboard(FileChannel ch, MappedByteBuffer buf) {
+            this.ch = ch;
+            this.buf = buf;
+            this.seed = buf.getLong(8);
+            this.capacity = buf.getInt(16);
+            this.allocated = buf.getInt(20);
+            this.root = buf.getInt(24);
+            this.size = buf.getInt(28);
+            this.freeHead = buf.getInt(32);
+            this.slotCount = buf.getInt(36);
+            this.freeCount = buf.getInt(44);
+            if (capacity < 1 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1
+                    || buf.capacity() != fileBytes(capacity))
+                throw new IllegalArgumentException("leaderboard file is " + buf.capacity()
+                    + " bytes, but its header says capacity " + capacity);
+            if (slotCount != 2 * capacity || allocated < 1 || allocated > capacity
+                    || (root | size | freeHead | freeCount) < 0
+                    || root >= allocated || freeHead >= allocated || size >= allocated || freeCount >= allocated)
+                throw new IllegalArgumentException("corrupt leaderboard header");
+        }
+
+        private static void checkFormat(ByteBuffer buf) {
+            if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC)
+                throw new IllegalArgumentException("not a leaderboard file");
+            if (buf.getInt(4) != VERSION)
+                throw new IllegalArgumentException("unsupported leaderboard version " + buf.getInt(4));
+        }
+
+        public static MappedLeaderboard open(Path file) throws IOException { return open(file, false); }
+
+        // Like open(), but repairs a file a crash left dirty instead of refusing it
+        public static MappedLeaderboard openOrRepair(Path file) throws IOException { return open(file, true); }
+
+        private static MappedLeaderboard open(Path file, boolean repair) throws IOException {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+                checkFormat(buf);
+                if (buf.getInt(40) == 0) return new MappedLeaderboard(ch, buf);
+                if (!repair)
+                    throw new IllegalArgumentException("leaderboard file was updated after its last checkpoint");
+            } catch (RuntimeException | IOException e) {
+                ch.close();
+                throw e;
+            }
+            ch.close();
+            return repair(file);
+        }
+
+        // Replaces any existing file with an empty, checkpointed board
+        public static MappedLeaderboard create(Path file, int expectedSize) throws IOException {
+            if (expectedSize < 0) throw new IllegalArgumentException("expectedSize must be >= 0: " + expectedSize);
+            int capacity = tableSizeFor(expectedSize + 1);
+            if (capacity > MAX_CAPACITY) throw new IllegalArgumentException("expectedSize too large: " + expectedSize);
+            Files.deleteIfExists(file);
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+                buf.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, new SecureRandom().nextLong())
+                    .putInt(16, capacity).putInt(20, 1).putInt(24, 0).putInt(28, 0).putInt(32, 0)
+                    .putInt(36, 2 * capacity).putInt(40, 0).putInt(44, 0);
+                buf.force();
+                return new MappedLeaderboard(ch, buf);
+            } catch (RuntimeException | IOException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        // Rebuilds file from the entry records whose names still hash to their stored hash, for a
+        // board a crash left dirty. Entries being updated at the time may be lost or keep their
+        // previous score; everything else survives
+        public static MappedLeaderboard repair(Path file) throws IOException {
+            Map<String, PlayerScore> entries = new HashMap<>();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                checkFormat(buf);
+                long seed = buf.getLong(8);
+                // a crash mid-grow leaves the header's capacity stale, but not the file length
+                int records = Math.min(MAX_CAPACITY, (buf.capacity() - HEADER_BYTES) / (RECORD_BYTES + 8));
+                for (int t = 1; t < records; t++) {
+                    if (buf.getInt(at(t) + KIND) != ENTRY) continue;
+                    byte[] utf8 = nameBytes(buf, t, records);
+                    if (utf8 == null) continue;
+                    String player = new String(utf8, StandardCharsets.UTF_8);
+                    if (hashOf(player, seed) != buf.getInt(at(t) + HASH)) continue;
+                    entries.putIfAbsent(foldToString(player, 0, player.length()),
+                        new PlayerScore(player, buf.getInt(at(t) + SCORE)));
+                }
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".repair");
+            try (MappedLeaderboard board = create(tmp, entries.size())) {
+                for (PlayerScore e : entries.values()) board.upsert(e.name, e.score);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return open(file);
+        }
+
+        private static long fileBytes(int capacity) { return HEADER_BYTES + (long)RECORD_BYTES * capacity + 4L * 2 * capacity; }
+
+        // Checkpoint: flush every update so far, then mark the file clean
+        public void force() {
+            writeHeader();
+            buf.force();
+            if (dirty) {
+                buf.putInt(40, 0);
+                buf.force(0, HEADER_BYTES);
+                dirty = false;
+            }
+        }
+
+        // Checkpoints and releases the file; the board must not be used afterwards
+        @Override public void close() throws IOException {
+            force();
+            ch.close();
+        }
+
+        // Sets name's score, replacing any earlier entry
+        public void upsert(String player, int newScore) {
+            byte[] utf8 = player.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > MAX_NAME_BYTES)
+                throw new IllegalArgumentException("name too long: " + utf8.length + " UTF-8 bytes, max " + MAX_NAME_BYTES);
+            int h = hashOf(player, seed);
+            int slot = slotOf(player, h);
+            if (slot >= 0 && get(slotNode(slot), SCORE) == newScore) return;
+            // grow first, so a full board fails before anything changes
+            int need = recordsFor(utf8.length);
+            if (capacity - allocated + freeCount < need) {
+                grow(need);
+                slot = slotOf(player, h);
             }
-            buckets[idx] = new Node(key, buckets[idx]);
+            markDirty();
+            if (slot >= 0) {
+                int oldScore = get(slotNode(slot), SCORE);
+                removeSlot(slot);
+                root = delete(root, oldScore, player);
+                size--;
+            }
+            int n = allocate(newScore, h, utf8);
+            root = insert(root, n, newScore, player);
+            addSlot(h, n);
             size++;
+            writeHeader();
+        }
+
+        public boolean remove(String player) {
+            int slot = slotOf(player, hashOf(player, seed));
+            if (slot < 0) return false;
+            markDirty();
+            int score = get(slotNode(slot), SCORE);
+            removeSlot(slot);
+            root = delete(root, score, player);
+            size--;
+            writeHeader();
+            return true;
+        }
+
+        // Current entry for name, or null
+        public PlayerScore get(String player) {
+            int slot = slotOf(player, hashOf(player, seed));
+            return slot < 0 ? null : entry(slotNode(slot));
+        }
+
+        // 1 for the best score, or -1 if name is not on the board
+        public int rankOf(String player) {
+            int slot = slotOf(player, hashOf(player, seed));
+            if (slot < 0) return -1;
+            int s = get(slotNode(slot), SCORE);
+            int rank = 1;
+            for (int t = root; ; ) {
+                int c = compare(s, player, t);
+                if (c == 0) return rank + get(get(t, RIGHT), COUNT);
+                if (c < 0) {
+                    rank += 1 + get(get(t, RIGHT), COUNT);
+                    t = get(t, LEFT);
+                } else {
+                    t = get(t, RIGHT);
+                }
+            }
+        }
+
+        public PlayerScore select(int rank) {
+            if (rank < 1 || rank > size) throw new IllegalArgumentException("rank must be in [1, " + size + "]: " + rank);
+            int t = root;
+            for (;;) {
+                int above = get(get(t, RIGHT), COUNT);
+                if (rank <= above) {
+                    t = get(t, RIGHT);
+                } else if (rank == above + 1) {
+                    return entry(t);
+                } else {
+                    rank -= above + 1;
+                    t = get(t, LEFT);
+                }
+            }
+        }
+
+        // Entries with a strictly higher score
+        public int countAbove(int s) {
+            int n = 0;
+            for (int t = root; t != 0; ) {
+                if (get(t, SCORE) > s) {
+                    n += 1 + get(get(t, RIGHT), COUNT);
+                    t = get(t, LEFT);
+                } else {
+                    t = get(t, RIGHT);
+                }
+            }
+            return n;
+        }
+
+        // Greatest first, reverse in-order with an explicit stack
+        public List<PlayerScore> top(int k) {
+            List<PlayerScore> out = new ArrayList<>(Math.min(k, size));
+            int[] stack = new int[get(root, HEIGHT)];
+            int depth = 0;
+            for (int t = root; t != 0; t = get(t, RIGHT)) stack[depth++] = t;
+            while (depth > 0 && out.size() < k) {
+                int t = stack[--depth];
+                out.add(entry(t));
+                for (int c = get(t, LEFT); c != 0; c = get(c, RIGHT)) stack[depth++] = c;
+            }
+            return out;
         }
 
         public int size() { return size; }
-    }
+        public long fileBytes() { return buf.capacity(); }
 
-    // ======== AVL Tree for Leaderboard ========
-    static class PlayerScore {
-        String name;
-        int score;
-        PlayerScore(String n, int s) { name = n; score = s; }
-        @Override public String toString() { return name + " (" + score + ")"; }
-    }
+        // ---- Records ----
 
-    static class AVLTree {
-        static class Node {
-            PlayerScore val;
-            Node left, right;
-            int height;
-            Node(PlayerScore v) { val = v; height = 1; }
+        private static int at(int t) { return HEADER_BYTES + t * RECORD_BYTES; }
+        private int get(int t, int field) { return buf.getInt(at(t) + field); }
+        private void set(int t, int field, int v) { buf.putInt(at(t) + field, v); }
+
+        private String nameOf(int t) { return new String(nameBytes(buf, t, capacity), StandardCharsets.UTF_8); }
+
+        // Name of entry t, or null if its overflow chain leaves the first records or hits a
+        // record of another kind
+        private static byte[] nameBytes(ByteBuffer buf, int t, int records) {
+            byte[] utf8 = new byte[buf.getShort(at(t) + NAME) & 0xffff];
+            int off = Math.min(utf8.length, INLINE_NAME_BYTES);
+            buf.get(at(t) + NAME + 2, utf8, 0, off);
+            for (int o = buf.getInt(at(t) + MORE); off < utf8.length; o = buf.getInt(at(o) + LEFT)) {
+                if (o <= 0 || o >= records || buf.getInt(at(o) + KIND) != OVERFLOW) return null;
+                int len = Math.min(OVERFLOW_BYTES, utf8.length - off);
+                buf.get(at(o) + DATA, utf8, off, len);
+                off += len;
+            }
+            return utf8;
         }
 
-        private Node root;
+        private static int recordsFor(int nameBytes) {
+            return 1 + Math.max(0, (nameBytes - INLINE_NAME_BYTES + OVERFLOW_BYTES - 1) / OVERFLOW_BYTES);
+        }
 
-        // Compare by score, then name to break ties
-        private int compare(PlayerScore a, PlayerScore b) {
-            if (a.score != b.score) return Integer.compare(a.score, b.score);
-            return a.name.compareToIgnoreCase(b.name);
+        private PlayerScore entry(int t) { return new PlayerScore(nameOf(t), get(t, SCORE)); }
+
+        // The flag must be on disk before any record changes, or a crash could leave a changed
+        // file that still reads as clean
+        private void markDirty() {
+            if (dirty) return;
+            buf.putInt(40, 1);
+            buf.force(0, HEADER_BYTES);
+            dirty = true;
         }
 
-        private int height(Node n) { return n == null ? 0 : n.height; }
-        private int balanceFactor(Node n) { return n == null ? 0 : height(n.left) - height(n.right); }
-        private void update(Node n) { n.height = 1 + Math.max(height(n.left), height(n.right)); }
+        private void writeHeader() {
+            buf.putInt(16, capacity).putInt(20, allocated).putInt(24, root).putInt(28, size)
+                .putInt(32, freeHead).putInt(36, slotCount).putInt(44, freeCount);
+        }
 
-        private Node rotateRight(Node y) {
-            Node x = y.left;
-            Node T2 = x.right;
-            x.right = y;
-            y.left = T2;
+        // Entry record for (s, h, utf8); the kind is written last so repair() skips half-built ones
+        private int allocate(int s, int h, byte[] utf8) {
+            int n = take();
+            int p = at(n);
+            int inline = Math.min(utf8.length, INLINE_NAME_BYTES);
+            buf.putInt(p + LEFT, 0).putInt(p + RIGHT, 0).putInt(p + HEIGHT, 1).putInt(p + COUNT, 1)
+                .putInt(p + SCORE, s).putInt(p + HASH, h).putInt(p + MORE, 0).putShort(p + NAME, (short)utf8.length);
+            buf.put(p + NAME + 2, utf8, 0, inline);
+            int prev = n, link = MORE;
+            for (int off = inline; off < utf8.length; off += OVERFLOW_BYTES) {
+                int o = take();
+                buf.putInt(at(o) + KIND, OVERFLOW).putInt(at(o) + LEFT, 0);
+                buf.put(at(o) + DATA, utf8, off, Math.min(OVERFLOW_BYTES, utf8.length - off));
+                set(prev, link, o);
+                prev = o;
+                link = LEFT;
+            }
+            buf.putInt(p + KIND, ENTRY);
+            return n;
+        }
+
+        private int take() {
+            int n = freeHead;
+            if (n == 0) return allocated++;
+            freeHead = get(n, LEFT);
+            freeCount--;
+            return n;
+        }
+
+        private void release(int n) {
+            buf.putInt(at(n) + KIND, FREE);
+            set(n, LEFT, freeHead);
+            freeHead = n;
+            freeCount++;
+        }
+
+        // Frees the overflow records holding the tail of entry t's name
+        private void releaseName(int t) {
+            for (int o = get(t, MORE); o != 0; ) {
+                int next = get(o, LEFT);
+                release(o);
+                o = next;
+            }
+        }
+
+        // Doubles the node area until need more records fit, and rebuilds the slot table past it
+        // from the live tree
+        private void grow(int need) {
+            int newCapacity = capacity;
+            do {
+                if (newCapacity == MAX_CAPACITY) throw new IllegalStateException("leaderboard is full: " + size + " entries");
+                newCapacity <<= 1;
+            } while (newCapacity - allocated + freeCount < need);
+            markDirty();
+            int oldSlots = slotAt(0), oldSlotBytes = 4 * slotCount;
+            capacity = newCapacity;
+            slotCount = 2 * capacity;
+            try {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // the old slots are unused records now; zero them so repair() never reads them as entries
+            for (int p = oldSlots; p < oldSlots + oldSlotBytes; p += 8) buf.putLong(p, 0);
+            int[] stack = new int[get(root, HEIGHT)];
+            int depth = 0;
+            for (int t = root; t != 0 || depth > 0; ) {
+                if (t != 0) {
+                    stack[depth++] = t;
+                    t = get(t, LEFT);
+                } else {
+                    t = stack[--depth];
+                    addSlot(get(t, HASH), t);
+                    t = get(t, RIGHT);
+                }
+            }
+            writeHeader();
+        }
+
+        // ---- Name slots ----
+
+        private static int hashOf(String player, long seed) {
+            long h = StandardHashes.xx64(player, 0, player.length(), seed, true);
+            return (int)(h ^ (h >>> 32));
+        }
+
+        private int slotAt(int i) { return HEADER_BYTES + RECORD_BYTES * capacity + 4 * i; }
+        private int slotNode(int i) { return buf.getInt(slotAt(i)); }
+
+        // Slot holding player, or ~slot of the empty slot ending its probe sequence
+        private int slotOf(String player, int h) {
+            int mask = slotCount - 1;
+            for (int i = indexFor(h, slotCount); ; i = (i + 1) & mask) {
+                int n = slotNode(i);
+                if (n == 0) return ~i;
+                if (get(n, HASH) == h && sameName(player, nameOf(n))) return i;
+            }
+        }
+
+        private static boolean sameName(String a, String b) {
+            if (a.length() != b.length()) return false;
+            for (int i = 0; i < a.length(); i++) {
+                if (fold(a.charAt(i)) != fold(b.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        private void addSlot(int h, int n) {
+            int mask = slotCount - 1;
+            int i = indexFor(h, slotCount);
+            while (slotNode(i) != 0) i = (i + 1) & mask;
+            buf.putInt(slotAt(i), n);
+        }
+
+        // The slot pointing at node n (which must have one)
+        private int slotFor(int n) {
+            int mask = slotCount - 1;
+            int i = indexFor(get(n, HASH), slotCount);
+            while (slotNode(i) != n) i = (i + 1) & mask;
+            return i;
+        }
+
+        // Backward-shift deletion, as in LongTable
+        private void removeSlot(int gap) {
+            int mask = slotCount - 1;
+            for (int i = (gap + 1) & mask; slotNode(i) != 0; i = (i + 1) & mask) {
+                int home = indexFor(get(slotNode(i), HASH), slotCount);
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    buf.putInt(slotAt(gap), slotNode(i));
+                    gap = i;
+                }
+            }
+            buf.putInt(slotAt(gap), 0);
+        }
+
+        // ---- Tree ----
+
+        // PlayerScore.ORDER on (s, player) vs node t, with folded names as the final tie-break
+        // so that only the same player compares equal
+        private int compare(int s, String player, int t) {
+            int ts = get(t, SCORE);
+            if (s != ts) return Integer.compare(s, ts);
+            String other = nameOf(t);
+            int c = player.compareToIgnoreCase(other);
+            return c != 0 ? c : foldToString(player, 0, player.length()).compareTo(foldToString(other, 0, other.length()));
+        }
+
+        // Node x holds (s, player), which is not in the tree yet
+        private int insert(int t, int x, int s, String player) {
+            if (t == 0) return x;
+            if (compare(s, player, t) < 0) set(t, LEFT, insert(get(t, LEFT), x, s, player));
+            else set(t, RIGHT, insert(get(t, RIGHT), x, s, player));
+            return rebalance(t);
+        }
+
+        // Removes the entry (s, player), which must be present
+        private int delete(int t, int s, String player) {
+            int c = compare(s, player, t);
+            if (c < 0) {
+                set(t, LEFT, delete(get(t, LEFT), s, player));
+            } else if (c > 0) {
+                set(t, RIGHT, delete(get(t, RIGHT), s, player));
+            } else {
+                int l = get(t, LEFT), r = get(t, RIGHT);
+                releaseName(t);
+                if (l == 0 || r == 0) {
+                    release(t);
+                    return l == 0 ? r : l;
+                }
+                // two children: move the in-order successor's entry, overflow chain included, into
+                // t and repoint its slot
+                int succ = r;
+                while (get(succ, LEFT) != 0) succ = get(succ, LEFT);
+                buf.putInt(slotAt(slotFor(succ)), t);
+                for (int off = SCORE; off < RECORD_BYTES; off += 4) buf.putInt(at(t) + off, buf.getInt(at(succ) + off));
+                set(t, RIGHT, deleteMin(r));
+            }
+            return rebalance(t);
+        }
+
+        private int deleteMin(int t) {
+            int l = get(t, LEFT);
+            if (l == 0) {
+                int r = get(t, RIGHT);
+                release(t);
+                return r;
+            }
+            set(t, LEFT, deleteMin(l));
+            return rebalance(t);
+        }
+
+        private void update(int t) {
+            int l = get(t, LEFT), r = get(t, RIGHT);
+            set(t, HEIGHT, 1 + Math.max(get(l, HEIGHT), get(r, HEIGHT)));
+            set(t, COUNT, 1 + get(l, COUNT) + get(r, COUNT));
+        }
+
+        private int balanceFactor(int t) { return get(get(t, LEFT), HEIGHT) - get(get(t, RIGHT), HEIGHT); }
+
+        private int rotateRight(int y) {
+            int x = get(y, LEFT);
+            set(y, LEFT, get(x, RIGHT));
+            set(x, RIGHT, y);
             update(y); update(x);
             return x;
         }
-        private Node rotateLeft(Node x) {
-            Node y = x.right;
-            Node T2 = y.left;
-            y.left = x;
-            x.right = T2;
+
+        private int rotateLeft(int x) {
+            int y = get(x, RIGHT);
+            set(x, RIGHT, get(y, LEFT));
+            set(y, LEFT, x);
             update(x); update(y);
             return y;
         }
 
-        public void insert(PlayerScore val) { root = insert(root, val); }
-        private Node insert(Node node, PlayerScore val) {
-            if (node == null) return new Node(val);
+        private int rebalance(int t) {
+            update(t);
+            int bf = balanceFactor(t);
+            if (bf > 1) {
+                if (balanceFactor(get(t, LEFT)) < 0) set(t, LEFT, rotateLeft(get(t, LEFT))); // LR
+                return rotateRight(t);
+            }
+            if (bf < -1) {
+                if (balanceFactor(get(t, RIGHT)) > 0) set(t, RIGHT, rotateRight(get(t, RIGHT))); // RL
+                return rotateLeft(t);
+            }
+            return t;
+        }
+    }
 
-            int cmp = compare(val, node.val);
-            if (cmp < 0) node.left = insert(node.left, val);
-            else if (cmp > 0) node.right = insert(node.right, val);
-            else {
-                // same (score, name) -> keep one; you could choose to update name/score here
-                return node;
+    // ======== Micro-benchmarks ========
+    // Rough System.nanoTime harness, run as: java Main --bench [name]. Numbers are only meant
+    // for comparing structures against each other on the same machine.
+    static final class Bench {
+        static volatile long sink; // keeps the JIT from dropping lookups whose result is unused
+
+        static void run(String which) {
+            boolean all = which.equals("all");
+            if (all || which.equals("freeze")) freeze();
+            if (all || which.equals("slice")) slice();
+            if (all || which.equals("bloom")) bloom();
+            if (all || which.equals("concurrent")) concurrent();
+            if (all || which.equals("dafsa")) dafsa();
+            if (all || which.equals("batch")) batch();
+            if (all || which.equals("cuckoo")) cuckoo();
+            if (all || which.equals("fuzzy")) fuzzy();
+            if (all || which.equals("rank")) rank();
+            if (all || which.equals("upsert")) upsert();
+            if (all || which.equals("avl")) avl();
+            if (all || which.equals("compact")) compact();
+            if (all || which.equals("board")) board();
+            if (all || which.equals("persistent")) persistent();
+        }
+
+        // Deterministic synthetic lowercase word list, so runs are comparable
+        static List<String> words(int n, long seed) {
+            Random rng = new Random(seed);
+            Set<String> out = new LinkedHashSet<>();
+            while (out.size() < n) {
+                char[] w = new char[4 + rng.nextInt(8)];
+                for (int i = 0; i < w.length; i++) w[i] = (char)('a' + rng.nextInt(26));
+                out.add(new String(w));
             }
+            return new ArrayList<>(out);
+        }
 
-            update(node);
-            int bf = balanceFactor(node);
+        // Average ns per contains over probes, after a warm-up pass
+        static double lookupNs(WordDictionary d, String[] probes, int rounds) {
+            long hits = 0;
+            for (String p : probes) if (d.contains(p)) hits++;
+            long t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String p : probes) if (d.contains(p)) hits++;
+            }
+            long t1 = System.nanoTime();
+            sink += hits;
+            return (t1 - t0) / (double)((long)rounds * probes.length);
+        }
 
-            // LL
-            if (bf > 1 && compare(val, node.left.val) < 0)
-                return rotateRight(node);
-            // RR
-            if (bf < -1 && compare(val, node.right.val) > 0)
-                return rotateLeft(node);
-            // LR
-            if (bf > 1 && compare(val, node.left.val) > 0) {
-                node.left = rotateLeft(node.left);
-                return rotateRight(node);
+        // Shallow estimate with compressed oops: Node (32) + String (24) + Latin-1 byte[] per key
+        static long estimateBytes(SimpleHashSet<?> set, List<String> keys) {
+            long bytes = 16 + 4L * set.capacity();
+            for (String k : keys) bytes += 32 + 24 + ((16 + k.length() + 7) & ~7);
+            return bytes;
+        }
+
+        static void freeze() {
+            int n = 500_000;
+            List<String> keys = words(n, 42);
+            List<String> misses = words(n * 2, 7).subList(n, n * 2);
+            WordSet set = WordSet.withExpectedSize(n);
+            WordSet hardened = WordSet.hardened(n); // the game's default, hashed like the frozen copy
+            for (String k : keys) {
+                set.add(k);
+                hardened.add(k);
             }
-            // RL
-            if (bf < -1 && compare(val, node.right.val) < 0) {
-                node.right = rotateRight(node.right);
-                return rotateLeft(node);
+            long t0 = System.nanoTime();
+            FrozenDictionary frozen = set.freeze();
+            long buildMs = (System.nanoTime() - t0) / 1_000_000;
+
+            // Shuffled copies: in insertion order the probes would walk the mutable set's nodes in
+            // allocation order, and equals would succeed on identity; real guesses get neither
+            List<String> hits = new ArrayList<>(n);
+            for (String k : keys) hits.add(new String(k));
+            Collections.shuffle(hits, new Random(5));
+            String[] hitProbes = hits.toArray(new String[0]);
+            String[] missProbes = misses.toArray(new String[0]);
+            System.out.printf("freeze: %d keys, MPH build %d ms%n", n, buildMs);
+            for (int i = 0; i < 3; i++) {
+                System.out.printf("  mutable  hit %.1f ns  miss %.1f ns%n",
+                    lookupNs(set, hitProbes, 5), lookupNs(set, missProbes, 5));
+                System.out.printf("  hardened hit %.1f ns  miss %.1f ns%n",
+                    lookupNs(hardened, hitProbes, 5), lookupNs(hardened, missProbes, 5));
+                System.out.printf("  frozen   hit %.1f ns  miss %.1f ns%n",
+                    lookupNs(frozen, hitProbes, 5), lookupNs(frozen, missProbes, 5));
             }
-            return node;
+            System.out.printf("  bytes/key: mutable ~%.1f, frozen %.1f%n",
+                estimateBytes(set, keys) / (double)n, frozen.bytesUsed() / (double)n);
         }
 
-        // Reverse in-order to get scores from high to low
-        public void topK(int k, List<PlayerScore> out) { topK(root, k, out); }
-        private void topK(Node node, int k, List<PlayerScore> out) {
-            if (node == null || out.size() >= k) return;
-            topK(node.right, k, out);
-            if (out.size() < k) out.add(node.val);
-            topK(node.left, k, out);
+        // Guess validation as main does it: raw input lines, trimmed and case-folded
+        static void slice() {
+            int n = 200_000;
+            List<String> keys = words(n, 42);
+            WordSet set = WordSet.hardened(n);
+            for (String k : keys) set.add(k);
+            String[] lines = new String[n];
+            Random rng = new Random(1);
+            for (int i = 0; i < n; i++) {
+                String w = rng.nextBoolean() ? keys.get(i) : keys.get(i).toUpperCase();
+                lines[i] = "  " + w + (i % 2 == 0 ? "\n" : "");
+            }
+            System.out.printf("slice: %d guesses%n", n);
+            for (int r = 0; r < 3; r++) {
+                long hits = 0, t0 = System.nanoTime();
+                for (String line : lines) if (set.contains(line.trim().toLowerCase())) hits++;
+                long t1 = System.nanoTime();
+                for (String line : lines) {
+                    int from = 0, to = line.length();
+                    while (from < to && line.charAt(from) <= ' ') from++;
+                    while (to > from && line.charAt(to - 1) <= ' ') to--;
+                    if (set.contains(line, from, to)) hits++;
+                }
+                long t2 = System.nanoTime();
+                sink += hits;
+                System.out.printf("  trim+toLowerCase %.1f ns   in-place slice %.1f ns%n",
+                    (t1 - t0) / (double)n, (t2 - t1) / (double)n);
+            }
+        }
+
+        // Automaton vs hash set on lookups and memory, plus prefix queries the set cannot answer
+        static void dafsa() {
+            int n = 500_000;
+            List<String> keys = words(n, 42);
+            List<String> misses = words(n * 2, 7).subList(n, n * 2);
+            WordSet set = WordSet.withExpectedSize(n);
+            for (String k : keys) set.add(k);
+            long t0 = System.nanoTime();
+            WordAutomaton dafsa = WordAutomaton.build(keys);
+            long buildMs = (System.nanoTime() - t0) / 1_000_000;
+
+            String[] hitProbes = keys.toArray(new String[0]);
+            String[] missProbes = misses.toArray(new String[0]);
+            System.out.printf("dafsa: %d keys, build %d ms, %d states, %d transitions%n",
+                n, buildMs, dafsa.states(), dafsa.transitions());
+            for (int i = 0; i < 3; i++) {
+                System.out.printf("  hash set  hit %.1f ns  miss %.1f ns%n",
+                    lookupNs(set, hitProbes, 5), lookupNs(set, missProbes, 5));
+                System.out.printf("  automaton hit %.1f ns  miss %.1f ns%n",
+                    lookupNs(dafsa, hitProbes, 5), lookupNs(dafsa, missProbes, 5));
+            }
+            System.out.printf("  bytes/key: hash set ~%.1f, automaton %.1f%n",
+                estimateBytes(set, keys) / (double)n, dafsa.bytesUsed() / (double)n);
+
+            // Every 3-letter prefix: count in O(3), and list up to 10 completions
+            String[] prefixes = new String[26 * 26 * 26];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = "" + (char)('a' + i / 676) + (char)('a' + i / 26 % 26) + (char)('a' + i % 26);
+            }
+            for (int r = 0; r < 3; r++) {
+                long total = 0, t1 = System.nanoTime();
+                for (String p : prefixes) total += dafsa.countWithPrefix(p);
+                long t2 = System.nanoTime();
+                for (String p : prefixes) total += dafsa.withPrefix(p, 10).size();
+                long t3 = System.nanoTime();
+                sink += total;
+                System.out.printf("  countWithPrefix %.1f ns   withPrefix(10) %.1f ns%n",
+                    (t2 - t1) / (double)prefixes.length, (t3 - t2) / (double)prefixes.length);
+            }
+        }
+
+        // Bulk validation: one contains() per key vs containsAll over the same keys, half of them hits
+        static void batch() {
+            int n = 1_000_000;
+            List<String> keys = words(n, 42);
+            List<String> probes = new ArrayList<>(words(n * 2, 42));
+            Collections.shuffle(probes, new Random(5));
+            String[] batch = probes.toArray(new String[0]);
+            boolean[] out = new boolean[batch.length];
+            HashStrategy[] strategies = {SeededHash.perProcess(), StandardHashes.DJB2};
+            for (HashStrategy strategy : strategies) {
+                WordSet set = WordSet.withExpectedSize(n, strategy);
+                for (String k : keys) set.add(k);
+                System.out.printf("batch: %d probes, %s%n", batch.length,
+                    strategy instanceof SeededHash ? "seeded xx64" : strategy);
+                for (int r = 0; r < 3; r++) {
+                    long hits = 0, t0 = System.nanoTime();
+                    for (String k : batch) if (set.contains(k)) hits++;
+                    long t1 = System.nanoTime();
+                    set.containsAll(batch, out);
+                    long t2 = System.nanoTime();
+                    for (boolean b : out) if (b) hits--;
+                    if (hits != 0) throw new IllegalStateException("containsAll disagrees with contains");
+                    System.out.printf("  scalar %.1f Mkeys/s   containsAll %.1f Mkeys/s%n",
+                        batch.length * 1e3 / (t1 - t0), batch.length * 1e3 / (t2 - t1));
+                }
+            }
+        }
+
+        // Cuckoo filter sizes: memory, false-positive rate, lookup cost, and rotating words out
+        static void cuckoo() {
+            int n = 500_000;
+            List<String> keys = words(n, 42);
+            List<String> misses = words(n * 2, 7).subList(n, n * 2);
+            WordSet set = WordSet.withExpectedSize(n, StandardHashes.XX64);
+            for (String k : keys) set.add(k);
+            String[] hitProbes = keys.toArray(new String[0]);
+            String[] missProbes = misses.toArray(new String[0]);
+            System.out.printf("cuckoo: %d keys, hash set ~%.1f bytes/key%n", n, estimateBytes(set, keys) / (double)n);
+            for (int bits : new int[] {8, 12, 16}) {
+                long t0 = System.nanoTime();
+                CuckooFilter filter = CuckooFilter.of(set, bits);
+                long buildMs = (System.nanoTime() - t0) / 1_000_000;
+                long fp = 0, trueMisses = 0;
+                for (String m : missProbes) {
+                    if (set.contains(m)) continue; // short random words repeat across seeds
+                    trueMisses++;
+                    if (filter.contains(m)) fp++;
+                }
+                System.out.printf("  %2d-bit: build %d ms, %.2f bytes/key, load %.2f, fpr %.5f, hit %.1f ns, miss %.1f ns%n",
+                    bits, buildMs, filter.bytesUsed() / (double)n, filter.loadFactor(), fp / (double)trueMisses,
+                    lookupNs(filter, hitProbes, 3), lookupNs(filter, missProbes, 3));
+                // Rotate out half the words and bring in as many new ones
+                t0 = System.nanoTime();
+                for (int i = 0; i < n; i += 2) filter.remove(keys.get(i));
+                for (int i = 0; i < n / 2; i++) filter.add(misses.get(i));
+                System.out.printf("          rotated %d words in %d ms, load %.2f%n",
+                    n / 2, (System.nanoTime() - t0) / 1_000_000, filter.loadFactor());
+            }
+        }
+
+        // Near-miss lookups through the deletes index vs a bounded edit-distance scan of every word
+        static void fuzzy() {
+            int n = 100_000;
+            List<String> keys = words(n, 42);
+            Random rng = new Random(3);
+            String[] queries = new String[2_000];
+            for (int i = 0; i < queries.length; i++) {
+                char[] w = keys.get(rng.nextInt(n)).toCharArray();
+                int edits = 1 + rng.nextInt(2);
+                for (int e = 0; e < edits; e++) w[rng.nextInt(w.length)] = (char)('a' + rng.nextInt(26));
+                queries[i] = new String(w);
+            }
+            for (int maxDistance = 1; maxDistance <= 2; maxDistance++) {
+                long t0 = System.nanoTime();
+                FuzzyIndex index = new FuzzyIndex(keys, maxDistance);
+                long buildMs = (System.nanoTime() - t0) / 1_000_000;
+                System.out.printf("fuzzy: %d words, distance <= %d, %d delete entries, build %d ms%n",
+                    n, maxDistance, index.deleteEntries(), buildMs);
+                for (int r = 0; r < 3; r++) {
+                    long found = 0, t1 = System.nanoTime();
+                    for (String q : queries) found += index.lookup(q, 0, q.length()).size();
+                    long t2 = System.nanoTime();
+                    int scanned = 50;
+                    for (int i = 0; i < scanned; i++) {
+                        for (String k : keys) if (FuzzyIndex.distance(queries[i], k, maxDistance) <= maxDistance) found++;
+                    }
+                    long t3 = System.nanoTime();
+                    sink += found;
+                    System.out.printf("  index %.1f us/query   full scan %.1f us/query%n",
+                        (t2 - t1) / 1e3 / queries.length, (t3 - t2) / 1e3 / scanned);
+                }
+            }
+        }
+
+        // Rank queries on a million-entry leaderboard vs counting with a full in-order walk
+        static void rank() {
+            int n = 1_000_000;
+            Random rng = new Random(11);
+            Leaderboard board = new Leaderboard();
+            PlayerScore[] players = new PlayerScore[n];
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                players[i] = board.upsert("player" + i, rng.nextInt(100_000));
+            }
+            System.out.printf("rank: %d players, build %d ms%n", n, (System.nanoTime() - t0) / 1_000_000);
+            int queries = 200_000;
+            for (int r = 0; r < 3; r++) {
+                long acc = 0, t1 = System.nanoTime();
+                for (int i = 0; i < queries; i++) acc += board.rankOf(players[rng.nextInt(n)].name);
+                long t2 = System.nanoTime();
+                for (int i = 0; i < queries; i++) acc += board.select(1 + rng.nextInt(n)).score;
+                long t3 = System.nanoTime();
+                for (int i = 0; i < queries; i++) acc += board.countAbove(rng.nextInt(100_000));
+                long t4 = System.nanoTime();
+                int scans = 5;
+                for (int i = 0; i < scans; i++) {
+                    int score = rng.nextInt(100_000);
+                    int[] above = new int[1];
+                    board.tree.forEach(p -> { if (p.score > score) above[0]++; });
+                    acc += above[0];
+                }
+                long t5 = System.nanoTime();
+                sink += acc;
+                System.out.printf("  rankOf %.0f ns  select %.0f ns  countAbove %.0f ns  full walk %.1f ms%n",
+                    (t2 - t1) / (double)queries, (t3 - t2) / (double)queries, (t4 - t3) / (double)queries,
+                    (t5 - t4) / 1e6 / scans);
+            }
+        }
+
+        // Score updates for existing players: the board keeps one entry per player
+        static void upsert() {
+            int n = 1_000_000;
+            Random rng = new Random(12);
+            Leaderboard board = new Leaderboard();
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                names[i] = "player" + i;
+                board.upsert(names[i], rng.nextInt(100_000));
+            }
+            int updates = 1_000_000;
+            for (int r = 0; r < 3; r++) {
+                long t0 = System.nanoTime();
+                for (int i = 0; i < updates; i++) board.upsert(names[rng.nextInt(n)], rng.nextInt(100_000));
+                long t1 = System.nanoTime();
+                System.out.printf("upsert: %.0f ns/update, %d entries for %d players%n",
+                    (t1 - t0) / (double)updates, board.size(), n);
+            }
+        }
+
+        // Recursive vs iterative insert and top-k on the same inputs. Each insert variant gets a
+        // fresh tree and a collected heap, and the order alternates so neither always runs first.
+        static void avl() {
+            int n = 1_000_000;
+            Random rng = new Random(13);
+            PlayerScore[] scores = new PlayerScore[n];
+            for (int i = 0; i < n; i++) scores[i] = new PlayerScore("player" + i, rng.nextInt(100_000));
+            int topRuns = 200_000;
+            List<PlayerScore> out = new ArrayList<>(100);
+            for (int r = 0; r < 4; r++) {
+                double[] insertNs = new double[2], topNs = new double[2];
+                for (int v = 0; v < 2; v++) {
+                    boolean iterative = (v + r) % 2 == 0;
+                    AVLTree<PlayerScore> tree = new AVLTree<>(PlayerScore.ORDER);
+                    System.gc();
+                    long t0 = System.nanoTime();
+                    if (iterative) for (PlayerScore ps : scores) tree.insertIterative(ps);
+                    else for (PlayerScore ps : scores) tree.insert(ps);
+                    long t1 = System.nanoTime();
+                    long acc = 0;
+                    for (int i = 0; i < topRuns; i++) {
+                        out.clear();
+                        if (iterative) tree.topK(100, out);
+                        else tree.topKRecursive(100, out);
+                        acc += out.size();
+                    }
+                    long t2 = System.nanoTime();
+                    sink += acc;
+                    insertNs[iterative ? 1 : 0] = (t1 - t0) / (double)n;
+                    topNs[iterative ? 1 : 0] = (t2 - t1) / (double)topRuns;
+                }
+                System.out.printf("avl: %d entries, insert recursive %.0f ns  iterative %.0f ns   top-100 recursive %.0f ns  iterator %.0f ns%n",
+                    n, insertNs[0], insertNs[1], topNs[0], topNs[1]);
+            }
+        }
+
+
+        // Object-per-entry Leaderboard vs the struct-of-arrays CompactLeaderboard on the same
+        // players: retained heap after a full GC, then random score updates and top-100 reads
+        static void compact() {
+            int n = 1_000_000;
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) names[i] = "player" + i;
+            Random rng = new Random(14);
+            int[] scores = new int[n];
+            for (int i = 0; i < n; i++) scores[i] = rng.nextInt(100_000);
+
+            long before = usedHeap();
+            Leaderboard boxed = new Leaderboard();
+            for (int i = 0; i < n; i++) boxed.upsert(names[i], scores[i]);
+            long boxedBytes = usedHeap() - before;
+            before = usedHeap();
+            CompactLeaderboard compact = new CompactLeaderboard();
+            for (int i = 0; i < n; i++) compact.upsert(names[i], scores[i]);
+            long compactBytes = usedHeap() - before;
+            System.out.printf("compact: %d players, heap %.1f B/player boxed vs %.1f B/player compact (%.1f by bytesUsed)%n",
+                n, boxedBytes / (double)n, compactBytes / (double)n, compact.bytesUsed() / (double)n);
+
+            int updates = 1_000_000, topRuns = 100_000;
+            for (int r = 0; r < 3; r++) {
+                long t0 = System.nanoTime();
+                for (int i = 0; i < updates; i++) boxed.upsert(names[rng.nextInt(n)], rng.nextInt(100_000));
+                long t1 = System.nanoTime();
+                for (int i = 0; i < updates; i++) compact.upsert(names[rng.nextInt(n)], rng.nextInt(100_000));
+                long t2 = System.nanoTime();
+                long acc = 0;
+                for (int i = 0; i < topRuns; i++) acc += boxed.top(100).size();
+                long t3 = System.nanoTime();
+                for (int i = 0; i < topRuns; i++) acc += compact.top(100).size();
+                long t4 = System.nanoTime();
+                sink += acc;
+                System.out.printf("  upsert %.0f ns boxed vs %.0f ns compact   top-100 %.0f ns vs %.0f ns%n",
+                    (t1 - t0) / (double)updates, (t2 - t1) / (double)updates,
+                    (t3 - t2) / (double)topRuns, (t4 - t3) / (double)topRuns);
+            }
+        }
+
+        static long usedHeap() {
+            Runtime rt = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) System.gc();
+            return rt.totalMemory() - rt.freeMemory();
+        }
+
+        // Mapped leaderboard: fill and checkpoint a file, then time reopening it and serving
+        // the first top-100, and compare updates with the in-memory Leaderboard
+        static void board() {
+            int n = 1_000_000;
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) names[i] = "player" + i;
+            Random rng = new Random(15);
+            try {
+                Path file = Files.createTempFile("leaderboard", ".lb");
+                try {
+                    long t0 = System.nanoTime();
+                    try (MappedLeaderboard board = MappedLeaderboard.create(file, n)) {
+                        for (int i = 0; i < n; i++) board.upsert(names[i], rng.nextInt(100_000));
+                    }
+                    long t1 = System.nanoTime();
+                    System.out.printf("board: %d players written and checkpointed in %d ms, %.1f MB file%n",
+                        n, (t1 - t0) / 1_000_000, Files.size(file) / 1e6);
+
+                    for (int r = 0; r < 3; r++) {
+                        long o0 = System.nanoTime();
+                        try (MappedLeaderboard board = MappedLeaderboard.open(file)) {
+                            List<PlayerScore> top = board.top(100);
+                            long o1 = System.nanoTime();
+                            sink += top.size();
+                            int updates = 200_000;
+                            for (int i = 0; i < updates; i++) board.upsert(names[rng.nextInt(n)], rng.nextInt(100_000));
+                            long o2 = System.nanoTime();
+                            board.force();
+                            long o3 = System.nanoTime();
+                            System.out.printf("  open + first top-100 %.2f ms   upsert %.0f ns   force %.1f ms%n",
+                                (o1 - o0) / 1e6, (o2 - o1) / (double)updates, (o3 - o2) / 1e6);
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Leaderboard heap = new Leaderboard();
+            for (int i = 0; i < n; i++) heap.upsert(names[i], rng.nextInt(100_000));
+            int updates = 200_000;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < updates; i++) heap.upsert(names[rng.nextInt(n)], rng.nextInt(100_000));
+            System.out.printf("  in-memory Leaderboard upsert %.0f ns%n", (System.nanoTime() - t0) / (double)updates);
+        }
+
+        // One writer inserting while the other threads read top-100 nonstop: the path-copying
+        // tree (lock-free snapshot reads, CAS-published writes) vs AVLTree behind one lock
+        static void persistent() {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            int preload = 500_000, writes = 200_000;
+            Random rng = new Random(16);
+            PlayerScore[] scores = new PlayerScore[preload + writes];
+            for (int i = 0; i < scores.length; i++) scores[i] = new PlayerScore("player" + i, rng.nextInt(100_000));
+            for (int r = 0; r < 3; r++) {
+                PersistentAVLTree<PlayerScore> cow = new PersistentAVLTree<>(PlayerScore.ORDER);
+                AVLTree<PlayerScore> locked = new AVLTree<>(PlayerScore.ORDER);
+                for (int i = 0; i < preload; i++) {
+                    cow.insert(scores[i]);
+                    locked.insert(scores[i]);
+                }
+                double[] a = readWhileWriting(threads, writes, i -> cow.insert(scores[preload + i]),
+                    out -> cow.topK(100, out));
+                double[] b = readWhileWriting(threads, writes, i -> {
+                    synchronized (locked) { locked.insert(scores[preload + i]); }
+                }, out -> {
+                    synchronized (locked) { locked.topK(100, out); }
+                });
+                System.out.printf("persistent: %d threads   path-copying %.0f writes/s, %.0f top-100/s   locked AVLTree %.0f writes/s, %.0f top-100/s%n",
+                    threads, a[0], a[1], b[0], b[1]);
+            }
+        }
+
+        // {writes per second, reads per second} while thread 0 applies writes and the rest read
+        static double[] readWhileWriting(int threads, int writes, IntConsumer write, Consumer<List<PlayerScore>> read) {
+            AtomicInteger writing = new AtomicInteger(1);
+            LongAdder reads = new LongAdder();
+            long t0 = System.nanoTime();
+            long[] writeNs = new long[1];
+            runThreads(threads, t -> {
+                if (t == 0) {
+                    for (int i = 0; i < writes; i++) write.accept(i);
+                    writeNs[0] = System.nanoTime() - t0;
+                    writing.set(0);
+                    return;
+                }
+                List<PlayerScore> out = new ArrayList<>(100);
+                while (writing.get() != 0) {
+                    out.clear();
+                    read.accept(out);
+                    reads.increment();
+                }
+            });
+            double secs = writeNs[0] / 1e9;
+            return new double[] {writes / secs, reads.sum() / secs};
+        }
+
+        // Miss-heavy guess stream, with and without the filter in front
+        static void bloom() {
+            int n = 500_000;
+            List<String> keys = words(n, 42);
+            WordSet set = WordSet.hardened(n);
+            for (String k : keys) set.add(k);
+            BloomFilteredDictionary filtered = new BloomFilteredDictionary(set, n, 0.01);
+            List<String> probes = new ArrayList<>(words(n * 2, 7).subList(n, n * 2)); // misses
+            probes.addAll(keys.subList(0, n / 10));                                 // ~10% hits
+            Collections.shuffle(probes, new Random(3));
+            String[] p = probes.toArray(new String[0]);
+            System.out.printf("bloom: %d keys, %d probes, k=%d, %.1f bits/key%n",
+                n, p.length, filtered.filter().hashCount(), filtered.filter().bitCount() / (double)n);
+            for (int r = 0; r < 3; r++) {
+                System.out.printf("  set only %.1f ns   bloom + set %.1f ns%n",
+                    lookupNs(set, p, 3), lookupNs(filtered, p, 3));
+            }
+            System.out.println("  " + filtered);
+        }
+
+        // Stress check (every key visible, size exact after racing adds and resizes), then
+        // 90% contains / 10% add throughput against ConcurrentHashMap.newKeySet()
+        static void concurrent() {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            int n = 400_000;
+            List<String> keys = words(n, 42);
+            ConcurrentWordSet set = new ConcurrentWordSet(16); // small on purpose: many resizes
+            runThreads(threads, t -> {
+                // every thread adds every key, starting at a different offset
+                for (int i = 0; i < n; i++) {
+                    String k = keys.get((i + t * (n / threads)) % n);
+                    set.add(k);
+                    if (!set.contains(k)) throw new AssertionError("lost " + k);
+                }
+            });
+            for (String k : keys) if (!set.contains(k)) throw new AssertionError("missing " + k);
+            if (set.size() != n) throw new AssertionError("size " + set.size() + " != " + n);
+            System.out.printf("concurrent: stress ok, %d threads, %d keys, %d buckets%n", threads, n, set.capacity());
+
+            String[] probes = words(n * 2, 7).toArray(new String[0]);
+            for (int r = 0; r < 3; r++) {
+                ConcurrentWordSet ours = new ConcurrentWordSet(n);
+                Set<String> chm = ConcurrentHashMap.newKeySet(n);
+                for (String k : keys) { ours.add(k); chm.add(k); }
+                double a = mixedOpsPerSec(threads, probes, ours::contains, ours::add);
+                double b = mixedOpsPerSec(threads, probes, chm::contains, chm::add);
+                System.out.printf("  ConcurrentWordSet %.1f Mops/s   CHM.newKeySet %.1f Mops/s%n", a / 1e6, b / 1e6);
+            }
+        }
+
+        static double mixedOpsPerSec(int threads, String[] probes,
+                                     Predicate<String> contains, Consumer<String> add) {
+            int opsPerThread = 1_000_000;
+            long t0 = System.nanoTime();
+            runThreads(threads, t -> {
+                long hits = 0;
+                for (int i = 0; i < opsPerThread; i++) {
+                    String p = probes[(i * 31 + t * 7919) % probes.length];
+                    if (i % 10 == 0) add.accept(p);
+                    else if (contains.test(p)) hits++;
+                }
+                sink += hits;
+            });
+            return (double)threads * opsPerThread / ((System.nanoTime() - t0) / 1e9);
+        }
+
+        static void runThreads(int threads, IntConsumer body) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                Thread w = new Thread(() -> {
+                    try {
+                        start.await();
+                        body.accept(id);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                w.start();
+                workers.add(w);
+            }
+            start.countDown();
+            for (Thread w : workers) {
+                try {
+                    w.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (failure.get() != null) throw new IllegalStateException("worker failed", failure.get());
         }
     }
 
@@ -162,6 +4684,14 @@ public class Main {
         "castle","python","java","random","bubble","forest","rocket","galaxy"
     };
 
+    // A lone '?' with optional surrounding whitespace, checked in place like the guesses
+    static boolean isHintRequest(String line) {
+        int from = 0, to = line.length();
+        while (from < to && line.charAt(from) <= ' ') from++;
+        while (to > from && line.charAt(to - 1) <= ' ') to--;
+        return to - from == 1 && line.charAt(from) == '?';
+    }
+
     private static String scramble(String word, Random rng) {
         char[] arr = word.toCharArray();
         for (int i = arr.length - 1; i > 0; i--) {
@@ -175,23 +4705,89 @@ public class Main {
     }
 
     public static void main(String[] args) {
+        List<String> opts = Arrays.asList(args);
+        int bench = opts.indexOf("--bench");
+        if (bench >= 0) {
+            Bench.run(bench + 1 < args.length ? args[bench + 1] : "all");
+            return;
+        }
+
+        // Each backend flag replaces the WordSet with another structure, so at most one applies
+        List<String> backends = new ArrayList<>();
+        for (String flag : new String[] {"--open-addressing", "--frozen", "--dafsa", "--cuckoo", "--mapped"}) {
+            if (opts.contains(flag)) backends.add(flag);
+        }
+        if (backends.size() > 1) {
+            System.err.println("Choose one dictionary backend, not " + String.join(" and ", backends));
+            return;
+        }
+
         Scanner sc = new Scanner(System.in);
         Random rng = new Random(System.nanoTime());
 
         System.out.println("==== Welcome to Hash & AVL Playground ====\n");
         System.out.print("Your name: ");
         String name = sc.nextLine().trim();
+        // Ask again now rather than fail to save the score at the end
+        while (name.getBytes(StandardCharsets.UTF_8).length > MappedLeaderboard.MAX_NAME_BYTES) {
+            System.out.print("That name is too long, try a shorter one: ");
+            name = sc.nextLine().trim();
+        }
         if (name.isEmpty()) name = "Player" + (1 + rng.nextInt(999));
 
-        // Build a mini dictionary using our SimpleHashSet
-        SimpleHashSet dict = new SimpleHashSet(53);
-        for (String w : WORDS) dict.add(w);
+        // Build a mini dictionary using our WordSet; --words <file> bulk-loads a full
+        // newline-delimited word list on top of the game words
+        int wordsFile = opts.indexOf("--words");
+        WordSet words = null;
+        if (wordsFile >= 0 && wordsFile + 1 < args.length) {
+            try {
+                words = WordSet.load(Paths.get(args[wordsFile + 1]));
+            } catch (IOException e) {
+                System.out.println("Can't read word list " + args[wordsFile + 1] + " (" + e + "), using the built-in words.");
+            }
+        }
+        if (words == null) words = WordSet.hardened(WORDS.length);
+        for (String w : WORDS) words.add(w);
+        // The words actually loaded; every structure derived from the dictionary is built from these
+        List<String> dictWords = new ArrayList<>(words.size());
+        words.forEachKey(dictWords::add);
+
+        WordDictionary dict = words;
+        if (opts.contains("--open-addressing")) {
+            dict = new OpenHashSet(dictWords.size(), SeededHash.perProcess());
+            for (String w : dictWords) dict.add(w);
+        }
+        // The word list never changes after this point, so it can be frozen into a perfect hash
+        if (opts.contains("--frozen")) dict = words.freeze();
+        if (opts.contains("--dafsa")) dict = WordAutomaton.build(dictWords);
+        // --cuckoo: keep only 16-bit fingerprints (approximate: ~1 in 8000 wrong words pass)
+        if (opts.contains("--cuckoo")) dict = CuckooFilter.of(words, 16);
+        // --mapped <file>: serve lookups from a dictionary file, writing it on first use and
+        // again whenever the word list no longer matches it
+        int mapped = opts.indexOf("--mapped");
+        if (mapped >= 0 && mapped + 1 < args.length) {
+            Path file = Paths.get(args[mapped + 1]);
+            try {
+                dict = MappedDictionary.openFor(dictWords, file);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Can't use dictionary file " + file + " (" + e + "), keeping the words in memory.");
+            }
+        }
+
+        // Valid answers for a round are the dictionary words made of the scrambled letters
+        AnagramIndex anagrams = new AnagramIndex(dictWords);
+        // Hint counts come from a DAFSA, built on the first "?" (seconds for a 300k-word list)
+        WordAutomaton hints = null;
+        // "Did you mean" index, built on the first miss. Its size grows with length^distance per
+        // word, so big word lists get distance 1 and very big ones no suggestions at all
+        int fuzzyDistance = dictWords.size() <= 10_000 ? 2 : dictWords.size() <= 100_000 ? 1 : 0;
+        FuzzyIndex fuzzy = null;
 
         // Play 5 rounds
         int rounds = 5;
         int score = 0;
         boolean[] used = new boolean[WORDS.length];
-        System.out.println("\nYou will get " + rounds + " scrambled words.\nType your guess and press Enter.\nExact match: +10, Valid different word: +5\n");
+        System.out.println("\nYou will get " + rounds + " scrambled words.\nType your guess and press Enter.\nExact match: +10, Other dictionary word from the same letters: +5, One letter off: +2\nType ? for a hint.\n");
 
         for (int r = 1; r <= rounds; r++) {
             int idx;
@@ -202,34 +4798,100 @@ public class Main {
 
             System.out.println("Round " + r + ": " + scrambled);
             System.out.print("Your guess: ");
-            String guess = sc.nextLine().trim().toLowerCase();
+            // Trim by index and let the dictionary fold case in place: no per-guess copies
+            String line = sc.nextLine();
+            // "?" asks for a hint: each one reveals another letter and how many words start that
+            // way, up to all but the last letter; a "?" is never scored as a guess
+            for (int revealed = 0; isHintRequest(line); ) {
+                if (revealed + 1 < word.length()) {
+                    String prefix = word.substring(0, ++revealed);
+                    if (hints == null) hints = WordAutomaton.build(dictWords);
+                    System.out.println("Hint: starts with \"" + prefix + "\" (dictionary words with that start: "
+                        + hints.countWithPrefix(prefix) + ")");
+                } else {
+                    System.out.println("No more hints: all but the last letter are showing (\""
+                        + word.substring(0, revealed) + "\").");
+                }
+                System.out.print("Your guess: ");
+                line = sc.nextLine();
+            }
+            int from = 0, to = line.length();
+            while (from < to && line.charAt(from) <= ' ') from++;
+            while (to > from && line.charAt(to - 1) <= ' ') to--;
 
-            if (guess.equals(word)) {
+            if (regionEquals(word, line, from, to, true)) {
                 score += 10;
                 System.out.println("Correct! +10 points\n");
-            } else if (dict.contains(guess)) {
+            } else if (AnagramIndex.sameLetters(line, from, to, word) && dict.contains(line, from, to)) {
                 score += 5;
                 System.out.println("That's a valid word from the dictionary, but not the hidden one. +5 points\n");
             } else {
-                System.out.println("Not in the mini-dictionary. 0 points. The word was: " + word + "\n");
+                // One edit from an accepted word earns +2; those are only the round's anagrams
+                List<String> accepted = anagrams.anagramsOf(word);
+                String guess = foldToString(line, from, to);
+                String typoOf = null;
+                for (String w : accepted) {
+                    if (FuzzyIndex.distance(guess, foldToString(w, 0, w.length()), 1) == 1) {
+                        typoOf = w;
+                        break;
+                    }
+                }
+                if (typoOf != null) {
+                    score += 2;
+                    System.out.println("So close! One letter off \"" + typoOf + "\". +2 points\n");
+                    continue;
+                }
+                StringBuilder others = new StringBuilder();
+                for (String w : accepted) {
+                    if (!w.equals(word)) others.append(others.length() == 0 ? " (also accepted: " : ", ").append(w);
+                }
+                if (others.length() > 0) others.append(')');
+                if (fuzzy == null && fuzzyDistance > 0) fuzzy = new FuzzyIndex(dictWords, fuzzyDistance);
+                String suggestion = fuzzy != null && from < to ? fuzzy.suggest(line, from, to) : null;
+                if (suggestion != null) System.out.println("Did you mean \"" + suggestion + "\"?");
+                System.out.println("Not a dictionary word made of those letters. 0 points. The word was: "
+                    + word + others + "\n");
             }
         }
 
         System.out.println("Game over, " + name + "! Your score: " + score + "\n");
 
-        // Build an AVL leaderboard and show Top-5
-        AVLTree leaderboard = new AVLTree();
-       
-        // Add current player
-        leaderboard.insert(new PlayerScore(name, score));
+        // Build an AVL leaderboard and show Top-5; --board <file> keeps it in a mapped file
+        // across games instead (created on first use, repaired after a crash, checkpointed on
+        // close), falling back to this game alone if the file can't be used
+        List<PlayerScore> top = null;
+        int myRank = 0, players = 0;
+        int boardFile = opts.indexOf("--board");
+        if (boardFile >= 0 && boardFile + 1 < args.length) {
+            Path file = Paths.get(args[boardFile + 1]);
+            try (MappedLeaderboard board = Files.exists(file) ? MappedLeaderboard.openOrRepair(file) : MappedLeaderboard.create(file, 16)) {
+                // The board keeps each player's best game
+                PlayerScore best = board.get(name);
+                if (best == null || score > best.score) board.upsert(name, score);
+                else System.out.println("Your best on this board is still " + best.score + ".");
+                top = board.top(5);
+                myRank = board.rankOf(name);
+                players = board.size();
+            } catch (IOException | UncheckedIOException | IllegalArgumentException | IllegalStateException e) {
+                System.out.println("Can't use leaderboard file " + file + " (" + e.getMessage() + "), showing this game only.");
+                top = null;
+            }
+        }
+        if (top == null) {
+            Leaderboard leaderboard = new Leaderboard();
+            // Add current player
+            leaderboard.upsert(name, score);
+            top = leaderboard.top(5);
+            myRank = leaderboard.rankOf(name);
+            players = leaderboard.size();
+        }
 
-        List<PlayerScore> top = new ArrayList<>();
-        leaderboard.topK(5, top);
         System.out.println("===== Leaderboard (Top 5) =====");
         int rank = 1;
         for (PlayerScore ps : top) {
             System.out.printf("%d. %s\n", rank++, ps);
         }
+        System.out.printf("You are #%d of %d\n", myRank, players);
 
         // Tiny peek: show hash bucket count used by our dictionary
         System.out.println("\n(HashSet size: " + dict.size() + ") \n");